@@ -0,0 +1,257 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava;
+
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPointedCompilationException;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles every program in a directory, or matching a glob, in parallel on a {@link ForkJoinPool}, with the flags of
+ * the command line. Each program is compiled to a class named after its path relative to the directory, into a target
+ * directory, or a single jar if the target ends with {@code .jar}.
+ */
+public class BatchCompiler {
+    private Map<String, Object> flags;
+
+    public BatchCompiler(Map<String, Object> flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * Compiles the programs, and prints the time taken for each, and any failures.
+     *
+     * @param programs A directory, in which every {@code .b} and {@code .bf} file is compiled, or a glob of files.
+     * @param target The directory or jar to write the classes to.
+     * @throws BrainfuckCompilationException If the programs cannot be found, or the jar cannot be written.
+     */
+    public void compile(String programs, String target) throws BrainfuckCompilationException {
+        long start = System.nanoTime();
+        Path base = base(programs);
+        List<Path> files = this.find(base, programs);
+        boolean jar = target.endsWith(".jar");
+
+        List<Callable<Result>> tasks = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Path file : files) {
+            String name = name(base.relativize(file));
+            if (names.add(name)) {
+                tasks.add(() -> this.compile(file, name, jar ? null : Paths.get(target)));
+            } else {
+                tasks.add(() -> new Result(file, name, "Duplicate class name"));
+            }
+        }
+
+        System.out.println("Compiling " + tasks.size() + " programs...");
+        ForkJoinPool pool = new ForkJoinPool();
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BrainfuckCompilationException("Batch compilation interrupted", e);
+        } finally {
+            pool.shutdown();
+        }
+
+        if (jar) {
+            this.write(Paths.get(target), results);
+        }
+
+        int failed = 0;
+        for (Result result : results) {
+            if (result.error == null) {
+                System.out.println(String.format(" Compiled %s in %.3fms (%d bytes)", result.name, result.nanos / 1e6, result.size()));
+            } else {
+                System.out.println(String.format(" Failed %s (%s) in %.3fms: %s", result.name, result.file, result.nanos / 1e6, result.error));
+                failed++;
+            }
+        }
+        System.out.println(String.format("Compiled %d of %d programs in %.3fms, %d failed", results.size() - failed, results.size(), (System.nanoTime() - start) / 1e6, failed));
+    }
+
+    private Result compile(Path file, String name, Path dir) {
+        long start = System.nanoTime();
+        Result result;
+        try {
+            String program = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            ModelJavaBytecodeCompiler compiler = BrainJava.compiler(name, this.flags);
+            BrainfuckCompiler.compile(program, compiler, BrainJava.passes(this.flags));
+            result = new Result(file, name, compiler.dumpClasses());
+            if (dir != null) {
+                for (Map.Entry<String, byte[]> cls : result.classes.entrySet()) {
+                    Path out = dir.resolve(cls.getKey() + ".class");
+                    Files.createDirectories(out.getParent());
+                    Files.write(out, cls.getValue());
+                }
+            }
+        } catch (BrainfuckPointedCompilationException e) {
+            result = new Result(file, name, "Invalid syntax: " + e.getError());
+        } catch (BrainfuckCompilationException | IOException e) {
+            result = new Result(file, name, String.valueOf(e));
+        } catch (RuntimeException e) {
+            result = new Result(file, name, String.valueOf(e));
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void write(Path jar, List<Result> results) throws BrainfuckCompilationException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try {
+            if (jar.getParent() != null) {
+                Files.createDirectories(jar.getParent());
+            }
+            try (OutputStream stream = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(stream, manifest)) {
+                for (Result result : results) {
+                    if (result.error == null) {
+                        for (Map.Entry<String, byte[]> cls : result.classes.entrySet()) {
+                            out.putNextEntry(new JarEntry(cls.getKey() + ".class"));
+                            out.write(cls.getValue());
+                            out.closeEntry();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new BrainfuckCompilationException("Error writing jar", e);
+        }
+    }
+
+    private List<Path> find(Path base, String programs) throws BrainfuckCompilationException {
+        PathMatcher matcher = Files.isDirectory(Paths.get(programs)) ?
+                path -> path.toString().endsWith(".b") || path.toString().endsWith(".bf") :
+                FileSystems.getDefault().getPathMatcher("glob:" + programs);
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new BrainfuckCompilationException("Failed to find programs", e);
+        }
+    }
+
+    /**
+     * @return The directory to search for {@code programs}: the directory itself, or the part of the glob before any
+     * wildcards.
+     */
+    private static Path base(String programs) {
+        if (Files.isDirectory(Paths.get(programs))) {
+            return Paths.get(programs);
+        }
+        int wildcard = programs.length();
+        for (char c : "*?[{".toCharArray()) {
+            int i = programs.indexOf(c);
+            if (i != -1) {
+                wildcard = Math.min(wildcard, i);
+            }
+        }
+        int separator = programs.lastIndexOf('/', wildcard);
+        return Paths.get(separator == -1 ? "" : programs.substring(0, separator + 1));
+    }
+
+    /**
+     * @return The internal name of the class for a program's relative path, without its extension, and with characters
+     * which cannot appear in a name replaced by {@code _}.
+     */
+    private static String name(Path relative) {
+        List<String> segments = new ArrayList<>();
+        for (Path segment : relative) {
+            segments.add(segment.toString());
+        }
+        String last = segments.get(segments.size() - 1);
+        if (last.lastIndexOf('.') > 0) {
+            segments.set(segments.size() - 1, last.substring(0, last.lastIndexOf('.')));
+        }
+
+        StringBuilder name = new StringBuilder();
+        for (String segment : segments) {
+            if (name.length() != 0) {
+                name.append('/');
+            }
+            if (segment.isEmpty() || !Character.isJavaIdentifierStart(segment.charAt(0))) {
+                name.append('_');
+            }
+            for (char c : segment.toCharArray()) {
+                name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+            }
+        }
+        return name.toString();
+    }
+
+    private static class Result {
+        private Path file;
+        private String name;
+        private Map<String, byte[]> classes;
+        private String error;
+        private long nanos;
+
+        public Result(Path file, String name, Map<String, byte[]> classes) {
+            this.file = file;
+            this.name = name;
+            this.classes = classes;
+        }
+
+        public Result(Path file, String name, String error) {
+            this.file = file;
+            this.name = name;
+            this.error = error;
+        }
+
+        /**
+         * @return The total size of the program's class files.
+         */
+        public int size() {
+            int size = 0;
+            for (byte[] code : this.classes.values()) {
+                size += code.length;
+            }
+            return size;
+        }
+    }
+
+}
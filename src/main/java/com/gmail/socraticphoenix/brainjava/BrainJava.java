@@ -23,14 +23,40 @@ package com.gmail.socraticphoenix.brainjava;
 
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPointedCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.compiler.pass.FoldingPass;
+import com.gmail.socraticphoenix.brainjava.compiler.pass.IdiomPass;
+import com.gmail.socraticphoenix.brainjava.compiler.pass.OffsetPass;
+import com.gmail.socraticphoenix.brainjava.compiler.pass.PrefixPass;
+import com.gmail.socraticphoenix.brainjava.compiler.pass.ScanPass;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BufferedIO;
+import com.gmail.socraticphoenix.brainjava.impl.handles.MethodHandleCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.handles.MethodHandleProgram;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.ByteIO;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.CharacterIO;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.Interpreter;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.InterpreterIO;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.InterpreterVisitor;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.TierCompiler;
 import org.objectweb.asm.Opcodes;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
@@ -38,6 +64,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class BrainJava implements Opcodes {
 
@@ -49,6 +76,17 @@ public class BrainJava implements Opcodes {
         flags.put("lcbound", Long.MIN_VALUE);
         flags.put("eof", 0);
         flags.put("io", "argument");
+        flags.put("flush", "input");
+        flags.put("tape", "list");
+        flags.put("loops", "methods");
+        flags.put("state", "static");
+        flags.put("prefix", 1000000L);
+        flags.put("optimize", 0);
+        flags.put("batch", false);
+        flags.put("interpret", false);
+        flags.put("tiered", false);
+        flags.put("handles", false);
+        flags.put("stream", false);
 
         for(String k : in) {
             if(k.startsWith("-")) {
@@ -74,12 +112,65 @@ public class BrainJava implements Opcodes {
                         break;
                     case "io":
                         String type = pieces[1];
-                        if(!type.equals("argument") && !type.equals("interactive")){
-                            System.out.println("Invalid io flag, expected 'argument' or 'interactive'");
+                        if(!type.equals("argument") && !type.equals("interactive") && !type.equals("binary") && !type.equals("mapped")){
+                            System.out.println("Invalid io flag, expected 'argument', 'interactive', 'binary' or 'mapped'");
                             return;
                         }
                         flags.put(pieces[0], pieces[1]);
                         break;
+                    case "flush":
+                        String flush = pieces[1];
+                        if(!flush.equals("none") && !flush.equals("input") && !flush.equals("newline") && !flush.equals("exit")){
+                            System.out.println("Invalid flush flag, expected 'none', 'input', 'newline' or 'exit'");
+                            return;
+                        }
+                        flags.put(pieces[0], pieces[1]);
+                        break;
+                    case "tape":
+                        String tape = pieces[1];
+                        if(!tape.equals("list") && !tape.equals("array")){
+                            System.out.println("Invalid tape flag, expected 'list' or 'array'");
+                            return;
+                        }
+                        flags.put(pieces[0], pieces[1]);
+                        break;
+                    case "loops":
+                        String loops = pieces[1];
+                        if(!loops.equals("methods") && !loops.equals("inline")){
+                            System.out.println("Invalid loops flag, expected 'methods' or 'inline'");
+                            return;
+                        }
+                        flags.put(pieces[0], pieces[1]);
+                        break;
+                    case "state":
+                        String state = pieces[1];
+                        if(!state.equals("static") && !state.equals("instance")){
+                            System.out.println("Invalid state flag, expected 'static' or 'instance'");
+                            return;
+                        }
+                        flags.put(pieces[0], pieces[1]);
+                        break;
+                    case "batch":
+                    case "interpret":
+                    case "tiered":
+                    case "handles":
+                    case "stream":
+                        flags.put(pieces[0], true);
+                        break;
+                    case "O0":
+                    case "O1":
+                    case "O2":
+                    case "O3":
+                        flags.put("optimize", pieces[0].charAt(1) - '0');
+                        break;
+                    case "prefix":
+                        try {
+                            flags.put(pieces[0], Long.parseLong(pieces[1]));
+                        } catch (NumberFormatException e) {
+                            System.out.println("Invalid prefix flag, expected integer number");
+                            return;
+                        }
+                        break;
                     default:
                         System.out.println("Unrecognized flag " + pieces[0]);
                         return;
@@ -89,6 +180,30 @@ public class BrainJava implements Opcodes {
             }
         }
 
+        if ((Boolean) flags.get("stream") && (Integer) flags.get("optimize") >= 2) {
+            //the other passes need the whole program, which a streamed program never is
+            System.out.println("Invalid stream flag, streamed programs can only be compiled at -O0 or -O1");
+            return;
+        }
+
+        if ((Boolean) flags.get("batch")) {
+            if (args.size() != 2) {
+                System.out.println("Expected args of the form -batch <target directory or jar> <program directory or glob>");
+                return;
+            }
+            new BatchCompiler(flags).compile(args.get(1), args.get(0));
+            return;
+        }
+
+        if ((Boolean) flags.get("interpret") || (Boolean) flags.get("tiered") || (Boolean) flags.get("handles")) {
+            if (args.isEmpty() || (flags.get("io").equals("mapped") && args.size() != 3)) {
+                System.out.println("Expected args of the form -interpret, -tiered or -handles <program file> [input...], or <program file> <input file> <output file> with mapped io");
+                return;
+            }
+            interpret(args.get(0), args.subList(1, args.size()), flags);
+            return;
+        }
+
         if (args.size() != 3) {
             System.out.println("Expected args of the form <class name> <target file> <program file>");
             return;
@@ -98,10 +213,12 @@ public class BrainJava implements Opcodes {
         String file = args.get(2);
         String targetFile = args.get(1);
         String prog = null;
-        try {
-            prog = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new BrainfuckCompilationException("Failed to read program", e);
+        if (!(Boolean) flags.get("stream")) {
+            try {
+                prog = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new BrainfuckCompilationException("Failed to read program", e);
+            }
         }
 
         System.out.println("Beginning compilation of " + clazz + "...");
@@ -109,16 +226,36 @@ public class BrainJava implements Opcodes {
         for(Map.Entry<String, Object> flag : flags.entrySet()) {
             System.out.println(" " + flag.getKey() + ": " + flag.getValue());
         }
-        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(Models.unboundedTape(clazz, Models.boundedCell((Long) flags.get("lcbound"), (Long) flags.get("ucbound")), flags.get("io").equals("argument") ? Models.argumentIO((Integer) flags.get("eof")) : Models.interactiveIO((Integer) flags.get("eof"))), clazz);
+        ModelJavaBytecodeCompiler compiler = compiler(clazz, flags);
 
         try {
-            BrainfuckCompiler.compile(prog, compiler);
-            byte[] dump = compiler.dump();
+            if (prog == null) {
+                //streamed programs are never whole, so only folding applies
+                try (FileChannel channel = FileChannel.open(Paths.get(file))) {
+                    BrainfuckCompiler.compile(channel, compiler, (Integer) flags.get("optimize") >= 1, new CellRange((Long) flags.get("lcbound"), (Long) flags.get("ucbound")));
+                } catch (IOException e) {
+                    throw new BrainfuckCompilationException("Failed to read program", e);
+                }
+            } else {
+                BrainfuckPassManager passes = passes(flags);
+                BrainfuckCompiler.compile(prog, compiler, passes);
+                for (BrainfuckPassManager.Record record : passes.getRecords()) {
+                    System.out.println(" " + record);
+                }
+            }
+            //a program too large for one class has spill classes, which are written beside the target file
+            Map<String, byte[]> dump = compiler.dumpClasses();
             try {
-                Files.write(Paths.get(targetFile), dump, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                for (Map.Entry<String, byte[]> cls : dump.entrySet()) {
+                    Path target = cls.getKey().equals(clazz) ? Paths.get(targetFile) : Paths.get(targetFile).resolveSibling(cls.getKey().substring(cls.getKey().lastIndexOf('/') + 1) + ".class");
+                    Files.write(target, cls.getValue(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                }
             } catch (IOException e) {
                 throw new BrainfuckCompilationException("Error writing file", e);
             }
+            if (dump.size() > 1) {
+                System.out.println("Split into " + dump.size() + " classes.");
+            }
 
             System.out.println("Successful compilation.");
         } catch (BrainfuckPointedCompilationException e) {
@@ -130,4 +267,145 @@ public class BrainJava implements Opcodes {
         }
     }
 
+    /**
+     * Runs the program in {@code file} with an {@link Interpreter}, with IO equivalent to the model selected by
+     * {@code flags}, compiling hot loops in the background if the {@code tiered} flag is set, or as a
+     * {@link MethodHandleProgram} if the {@code handles} flag is set. In argument io, {@code input} is the program's
+     * input, and in mapped io, it names the input and output files.
+     */
+    static void interpret(String file, List<String> input, Map<String, Object> flags) throws BrainfuckCompilationException {
+        String prog;
+        try {
+            prog = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new BrainfuckCompilationException("Failed to read program", e);
+        }
+
+        Engine engine;
+        TierCompiler tiers = null;
+        CellRange range = new CellRange((Long) flags.get("lcbound"), (Long) flags.get("ucbound"));
+        try {
+            if ((Boolean) flags.get("handles")) {
+                engine = MethodHandleCompiler.compile(prog, range, passes(flags))::run;
+            } else {
+                Interpreter interpreter = InterpreterVisitor.lower(prog, range, passes(flags));
+                if ((Boolean) flags.get("tiered")) {
+                    interpreter = interpreter.tiered(TierCompiler.DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+                    tiers = interpreter.getTiers();
+                }
+                engine = interpreter::run;
+            }
+        } catch (BrainfuckPointedCompilationException e) {
+            System.out.println("Invalid syntax: " + e.getError());
+            System.out.println(e.getPointedError());
+            return;
+        }
+
+        int eof = (Integer) flags.get("eof");
+        BufferedIO.FlushPolicy policy = flags.get("flush").equals("none") ? null : BufferedIO.FlushPolicy.valueOf(((String) flags.get("flush")).toUpperCase());
+        try {
+            switch ((String) flags.get("io")) {
+                case "argument":
+                    engine.run(new CharacterIO(input.toArray(new String[0]), eof, System.out, policy));
+                    break;
+                case "interactive":
+                    engine.run(new CharacterIO(new InputStreamReader(System.in), eof, System.out, policy));
+                    break;
+                case "binary":
+                    engine.run(new ByteIO(System.in, eof, new FileOutputStream(FileDescriptor.out)));
+                    break;
+                default:
+                    try (InputStream in = Files.newInputStream(Paths.get(input.get(0)));
+                         OutputStream out = Files.newOutputStream(Paths.get(input.get(1)))) {
+                        engine.run(new ByteIO(in, eof, out));
+                    }
+                    break;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to run " + file, e);
+        }
+
+        //the program's output goes to stdout, so failed loops are reported on stderr
+        if (tiers != null && tiers.getFailure() != null) {
+            System.err.println(tiers.getFailedLoops() + " loops failed to compile, and were interpreted. The first failure was:");
+            tiers.getFailure().printStackTrace();
+        }
+    }
+
+    private interface Engine {
+
+        void run(InterpreterIO io) throws IOException;
+
+    }
+
+    /**
+     * Creates a compiler for the class {@code clazz}, with the models selected by {@code flags}.
+     */
+    static ModelJavaBytecodeCompiler compiler(String clazz, Map<String, Object> flags) {
+        CellModel cell = Models.boundedCell((Long) flags.get("lcbound"), (Long) flags.get("ucbound"));
+        IOModel io;
+        switch ((String) flags.get("io")) {
+            case "argument":
+                io = Models.argumentIO((Integer) flags.get("eof"));
+                break;
+            case "interactive":
+                io = Models.interactiveIO((Integer) flags.get("eof"));
+                break;
+            case "binary":
+                io = Models.binaryIO((Integer) flags.get("eof"));
+                break;
+            default:
+                io = Models.mappedIO((Integer) flags.get("eof"));
+                break;
+        }
+        if (!flags.get("flush").equals("none") && (flags.get("io").equals("argument") || flags.get("io").equals("interactive"))) {
+            io = Models.bufferedIO(io, BufferedIO.FlushPolicy.valueOf(((String) flags.get("flush")).toUpperCase()));
+        }
+        TapeModel tape = flags.get("tape").equals("array") ? Models.arrayTape(clazz, cell, io) : Models.unboundedTape(clazz, cell, io);
+        return new ModelJavaBytecodeCompiler(tape, clazz, flags.get("loops").equals("inline"), flags.get("state").equals("instance"));
+    }
+
+    /**
+     * Creates the passes for the {@code optimize} level, cell bounds and {@code prefix} budget in {@code flags}.
+     */
+    static BrainfuckPassManager passes(Map<String, Object> flags) {
+        return passes((Integer) flags.get("optimize"), (Long) flags.get("lcbound"), (Long) flags.get("ucbound"), (Long) flags.get("prefix"));
+    }
+
+    /**
+     * Creates the passes for an optimization level:
+     * <ul>
+     *     <li>0 - none</li>
+     *     <li>1 - folding runs of instructions</li>
+     *     <li>2 - also recognizing clear, multiply and scan loops, and addressing cells by offset</li>
+     *     <li>3 - also evaluating the start of the program at compile time</li>
+     * </ul>
+     * The command line compiles at level 0, as programs were compiled before there were passes, unless given one of the
+     * flags {@code -O1} to {@code -O3}. A program compiled with {@code -stream} is only ever folded, so it takes at most
+     * {@code -O1}.
+     *
+     * @param level The optimization level, from 0 to 3.
+     * @param lcbound The lower bound of the cells.
+     * @param ucbound The upper bound of the cells.
+     * @param prefix The budget of instructions evaluated at compile time.
+     * @return A new pass manager.
+     */
+    public static BrainfuckPassManager passes(int level, long lcbound, long ucbound, long prefix) {
+        BrainfuckPassManager passes = new BrainfuckPassManager();
+        if (level >= 1) {
+            passes.add(new FoldingPass(new CellRange(lcbound, ucbound)));
+        }
+        if (level >= 2) {
+            passes.add(new IdiomPass());
+            passes.add(new ScanPass());
+        }
+        if (level >= 3) {
+            passes.add(new PrefixPass(lcbound, ucbound, prefix));
+        }
+        if (level >= 2) {
+            passes.add(new OffsetPass());
+        }
+        return passes;
+    }
+
 }
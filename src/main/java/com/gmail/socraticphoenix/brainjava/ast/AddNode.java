@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+/**
+ * A node that adds {@code delta} to the current cell, replacing a run of {@code +} and {@code -}.
+ */
+public class AddNode implements Node {
+    private Loc start;
+    private Loc end;
+    private int delta;
+
+    public AddNode(Loc start, Loc end, int delta) {
+        this.start = start;
+        this.end = end;
+        this.delta = delta;
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.ADD;
+    }
+
+    @Override
+    public Loc start() {
+        return this.start;
+    }
+
+    @Override
+    public Loc end() {
+        return this.end;
+    }
+
+    public int getDelta() {
+        return this.delta;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+import java.util.List;
+
+/**
+ * A straight-line run of instructions with the pointer movement between them removed. Each node is performed on the
+ * cell {@code offsets[i]} cells away from the pointer at the start of the block, and the pointer is then moved by
+ * {@code shift} cells once, at the end of the block. The nodes may only be {@link Kind#ADD}, {@link Kind#INPUT},
+ * {@link Kind#OUTPUT}, {@link Kind#SET_ZERO} or {@link Kind#MUL_ADD} nodes.
+ */
+public class BlockNode implements Node {
+    private Loc start;
+    private Loc end;
+    private List<Node> nodes;
+    private int[] offsets;
+    private int shift;
+    private int min;
+    private int max;
+
+    public BlockNode(Loc start, Loc end, List<Node> nodes, int[] offsets, int shift) {
+        this.start = start;
+        this.end = end;
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.shift = shift;
+
+        this.min = Math.min(0, shift);
+        this.max = Math.max(0, shift);
+        for (int i = 0; i < offsets.length; i++) {
+            this.min = Math.min(this.min, offsets[i]);
+            this.max = Math.max(this.max, offsets[i]);
+            if (nodes.get(i).kind() == Kind.MUL_ADD) {
+                for (int target : ((MulAddNode) nodes.get(i)).getOffsets()) {
+                    this.min = Math.min(this.min, offsets[i] + target);
+                    this.max = Math.max(this.max, offsets[i] + target);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.BLOCK;
+    }
+
+    @Override
+    public Loc start() {
+        return this.start;
+    }
+
+    @Override
+    public Loc end() {
+        return this.end;
+    }
+
+    public List<Node> getNodes() {
+        return this.nodes;
+    }
+
+    public int[] getOffsets() {
+        return this.offsets;
+    }
+
+    public int getShift() {
+        return this.shift;
+    }
+
+    /**
+     * @return The lowest offset from the pointer at the start of the block that is accessed or moved to in the block.
+     */
+    public int getMin() {
+        return this.min;
+    }
+
+    /**
+     * @return The highest offset from the pointer at the start of the block that is accessed or moved to in the block.
+     */
+    public int getMax() {
+        return this.max;
+    }
+
+}
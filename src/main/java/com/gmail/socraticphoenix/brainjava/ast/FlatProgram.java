@@ -0,0 +1,266 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A program as parallel arrays, with one entry per instruction, instead of a tree of {@link Node}s. Each instruction
+ * has a {@link Kind}, an operand, which is the delta of an {@link Kind#ADD} or {@link Kind#MOVE}, a jump target, which
+ * is the index of the matching bracket of a {@link Kind#WHILE_START} or {@link Kind#WHILE_END}, and the line and column
+ * it starts at, packed into a long.
+ * <p>
+ * Only the kinds with a source representation, {@link Kind#ADD} and {@link Kind#MOVE} are held; the rest are only
+ * recognized in the tree, by a {@link com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass}.
+ */
+public class FlatProgram {
+    private static final Kind[] KINDS = Kind.values();
+
+    private byte[] kinds;
+    private int[] operands;
+    private int[] jumps;
+    private long[] locs;
+    private int size;
+
+    private FlatProgram(byte[] kinds, int[] operands, int[] jumps, long[] locs, int size) {
+        this.kinds = kinds;
+        this.operands = operands;
+        this.jumps = jumps;
+        this.locs = locs;
+        this.size = size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public Kind kind(int i) {
+        return KINDS[this.kinds[i]];
+    }
+
+    public int operand(int i) {
+        return this.operands[i];
+    }
+
+    /**
+     * @return The index of the bracket matching the one at {@code i}, or -1 if it is not a bracket.
+     */
+    public int jump(int i) {
+        return this.jumps[i];
+    }
+
+    public int line(int i) {
+        return (int) (this.locs[i] >>> 32);
+    }
+
+    public int column(int i) {
+        return (int) this.locs[i];
+    }
+
+    public Loc loc(int i) {
+        return new Loc(this.column(i), this.line(i));
+    }
+
+    /**
+     * Folds runs of {@code +}/{@code -} into {@link Kind#ADD}s and runs of {@code >}/{@code <} into {@link Kind#MOVE}s,
+     * exactly as the {@link com.gmail.socraticphoenix.brainjava.compiler.pass.FoldingPass FoldingPass} does, except
+     * that a folded run is located at its first instruction. Unless {@code mixed}, which is only exact if the range of
+     * the cells contains zero, runs of {@code +} and of {@code -} are folded separately.
+     *
+     * @param mixed Whether runs mixing {@code +} and {@code -} may be folded.
+     * @return The folded program.
+     */
+    public FlatProgram fold(boolean mixed) {
+        Builder builder = new Builder(this.size);
+        int i = 0;
+        while (i < this.size) {
+            Kind kind = this.kind(i);
+            if (!isRun(kind)) {
+                builder.add(this, i);
+                i++;
+                continue;
+            }
+
+            boolean add = isAdd(kind);
+            int start = i;
+            int delta = 0;
+            while (i < this.size && isRun(this.kind(i)) && isAdd(this.kind(i)) == add
+                    && (mixed || !add || i == start || Integer.signum(delta(this, i)) == Integer.signum(delta))) {
+                delta += delta(this, i);
+                i++;
+            }
+            if (i - start == 1) {
+                builder.add(this, start);
+            } else if (delta != 0) {
+                builder.add(add ? Kind.ADD : Kind.MOVE, delta, this.column(start), this.line(start));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The program as a tree of nodes.
+     */
+    public List<Node> toNodes() {
+        List<List<Node>> lists = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < this.size; i++) {
+            Kind kind = this.kind(i);
+            switch (kind) {
+                case WHILE_START:
+                    WhileNode loop = new WhileNode(this.loc(i), this.loc(this.jump(i)), new ArrayList<>());
+                    nodes.add(loop);
+                    lists.add(nodes);
+                    nodes = loop.getNodes();
+                    break;
+                case WHILE_END:
+                    nodes = lists.remove(lists.size() - 1);
+                    break;
+                case ADD:
+                    nodes.add(new AddNode(this.loc(i), this.loc(i), this.operand(i)));
+                    break;
+                case MOVE:
+                    nodes.add(new MoveNode(this.loc(i), this.loc(i), this.operand(i)));
+                    break;
+                default:
+                    nodes.add(new GeneralNode(this.loc(i), kind));
+                    break;
+            }
+        }
+        return nodes;
+    }
+
+    private static boolean isRun(Kind kind) {
+        return isAdd(kind) || kind == Kind.ADVANCE || kind == Kind.RETREAT || kind == Kind.MOVE;
+    }
+
+    private static boolean isAdd(Kind kind) {
+        return kind == Kind.INCREMENT || kind == Kind.DECREMENT || kind == Kind.ADD;
+    }
+
+    private static int delta(FlatProgram program, int i) {
+        switch (program.kind(i)) {
+            case INCREMENT:
+            case ADVANCE:
+                return 1;
+            case DECREMENT:
+            case RETREAT:
+                return -1;
+            default:
+                return program.operand(i);
+        }
+    }
+
+    /**
+     * Builds a {@link FlatProgram} one instruction at a time, matching brackets as they are added.
+     */
+    public static class Builder {
+        private byte[] kinds;
+        private int[] operands;
+        private int[] jumps;
+        private long[] locs;
+        private int size;
+
+        private int[] open;
+        private int depth;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            this.kinds = new byte[capacity];
+            this.operands = new int[capacity];
+            this.jumps = new int[capacity];
+            this.locs = new long[capacity];
+            this.open = new int[16];
+        }
+
+        /**
+         * Adds an instruction at column {@code x} of line {@code y}. A {@link Kind#WHILE_END} is matched with the last
+         * unmatched {@link Kind#WHILE_START}.
+         *
+         * @throws IllegalArgumentException If {@code kind} cannot be held in a flat program.
+         * @throws IllegalStateException If a {@link Kind#WHILE_END} has no unmatched {@link Kind#WHILE_START}.
+         */
+        public Builder add(Kind kind, int operand, int x, int y) {
+            if (kind.isSynthetic() && kind != Kind.ADD && kind != Kind.MOVE) {
+                throw new IllegalArgumentException(kind + " cannot be held in a flat program");
+            }
+            if (this.size == this.kinds.length) {
+                int capacity = this.size * 2;
+                this.kinds = Arrays.copyOf(this.kinds, capacity);
+                this.operands = Arrays.copyOf(this.operands, capacity);
+                this.jumps = Arrays.copyOf(this.jumps, capacity);
+                this.locs = Arrays.copyOf(this.locs, capacity);
+            }
+
+            int index = this.size;
+            int jump = -1;
+            if (kind == Kind.WHILE_START) {
+                if (this.depth == this.open.length) {
+                    this.open = Arrays.copyOf(this.open, this.depth * 2);
+                }
+                this.open[this.depth++] = index;
+            } else if (kind == Kind.WHILE_END) {
+                if (this.depth == 0) {
+                    throw new IllegalStateException("Unmatched " + kind);
+                }
+                jump = this.open[--this.depth];
+                this.jumps[jump] = index;
+            }
+
+            this.kinds[index] = (byte) kind.ordinal();
+            this.operands[index] = operand;
+            this.jumps[index] = jump;
+            this.locs[index] = ((long) y << 32) | (x & 0xFFFFFFFFL);
+            this.size++;
+            return this;
+        }
+
+        private Builder add(FlatProgram program, int i) {
+            return this.add(program.kind(i), program.operand(i), program.column(i), program.line(i));
+        }
+
+        /**
+         * @return The number of {@link Kind#WHILE_START}s not yet matched.
+         */
+        public int depth() {
+            return this.depth;
+        }
+
+        /**
+         * @throws IllegalStateException If a {@link Kind#WHILE_START} is unmatched.
+         */
+        public FlatProgram build() {
+            if (this.depth != 0) {
+                throw new IllegalStateException("Unmatched " + Kind.WHILE_START);
+            }
+            return new FlatProgram(Arrays.copyOf(this.kinds, this.size), Arrays.copyOf(this.operands, this.size),
+                    Arrays.copyOf(this.jumps, this.size), Arrays.copyOf(this.locs, this.size), this.size);
+        }
+    }
+
+}
@@ -29,25 +29,51 @@ public enum Kind {
     INPUT(','),
     OUTPUT('.'),
     WHILE_START('['),
-    WHILE_END(']');
+    WHILE_END(']'),
+    ADD,
+    MOVE,
+    SET_ZERO,
+    MUL_ADD,
+    SCAN,
+    BLOCK,
+    PREFIX;
+    private static final Kind[] TABLE = new Kind[256];
+
+    static {
+        for (Kind k : values()) {
+            if (!k.synthetic) {
+                TABLE[k.rep] = k;
+            }
+        }
+    }
+
     private char rep;
+    private boolean synthetic;
 
     Kind(char c) {
         this.rep = c;
     }
 
+    Kind() {
+        this.synthetic = true;
+    }
+
     public char getRep() {
         return this.rep;
     }
 
-    public static Kind from(char c) {
-        for (Kind k : values()) {
-            if (k.rep == c) {
-                return k;
-            }
-        }
+    /**
+     * @return Whether this kind has no source representation, and is only created by a {@link com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass}.
+     */
+    public boolean isSynthetic() {
+        return this.synthetic;
+    }
 
-        return null;
+    /**
+     * @return The kind represented by {@code c}, or null if it is not an instruction.
+     */
+    public static Kind from(char c) {
+        return c < TABLE.length ? TABLE[c] : null;
     }
 
 }
@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+import java.util.List;
+
+/**
+ * A loop that steps the current cell by one until it is zero, while adding constants to other cells, such as
+ * {@code [->+<]} or {@code [->++>+++<<]}. It is equivalent to adding {@code factors[i]} times the current cell to the
+ * cell at {@code offsets[i]} for each {@code i}, and then setting the current cell to zero. The original loop body is
+ * kept, so that it may still be compiled as a regular loop.
+ */
+public class MulAddNode extends WhileNode {
+    private int[] offsets;
+    private int[] factors;
+
+    public MulAddNode(Loc start, Loc end, List<Node> nodes, int[] offsets, int[] factors) {
+        super(start, end, nodes);
+        this.offsets = offsets;
+        this.factors = factors;
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.MUL_ADD;
+    }
+
+    public int[] getOffsets() {
+        return this.offsets;
+    }
+
+    public int[] getFactors() {
+        return this.factors;
+    }
+
+}
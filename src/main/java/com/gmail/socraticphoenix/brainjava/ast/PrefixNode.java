@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+import java.util.List;
+
+/**
+ * The result of evaluating the start of a program at compile time. Running the original nodes is equivalent to writing
+ * {@code output}, then setting the cell {@code offset + i} cells from the initial pointer to {@code cells[i]} for each
+ * {@code i}, and then moving the pointer {@code pointer} cells from where it started. The original nodes are kept, so
+ * that they may still be compiled as they were.
+ */
+public class PrefixNode implements Node {
+    private Loc start;
+    private Loc end;
+    private List<Node> nodes;
+    private String output;
+    private long[] cells;
+    private int offset;
+    private int pointer;
+
+    public PrefixNode(Loc start, Loc end, List<Node> nodes, String output, long[] cells, int offset, int pointer) {
+        this.start = start;
+        this.end = end;
+        this.nodes = nodes;
+        this.output = output;
+        this.cells = cells;
+        this.offset = offset;
+        this.pointer = pointer;
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.PREFIX;
+    }
+
+    @Override
+    public Loc start() {
+        return this.start;
+    }
+
+    @Override
+    public Loc end() {
+        return this.end;
+    }
+
+    public List<Node> getNodes() {
+        return this.nodes;
+    }
+
+    public String getOutput() {
+        return this.output;
+    }
+
+    public long[] getCells() {
+        return this.cells;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public int getPointer() {
+        return this.pointer;
+    }
+
+}
@@ -21,12 +21,17 @@
  */
 package com.gmail.socraticphoenix.brainjava.compiler;
 
-import com.gmail.socraticphoenix.brainjava.ast.GeneralNode;
+import com.gmail.socraticphoenix.brainjava.ast.FlatProgram;
 import com.gmail.socraticphoenix.brainjava.ast.Kind;
 import com.gmail.socraticphoenix.brainjava.ast.Loc;
 import com.gmail.socraticphoenix.brainjava.ast.Node;
-import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
 
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
@@ -35,38 +40,113 @@ public class BrainfuckCompiler {
     private CharMatrix program;
     private List<Node> nodes;
 
-    public static void compile(String val, BrainfuckVisitor visitor) throws BrainfuckCompilationException {
+    public static void compile(String val, BrainfuckVisitor visitor, BrainfuckPass... passes) throws BrainfuckCompilationException {
+        compile(val, visitor, new BrainfuckPassManager(passes));
+    }
+
+    public static void compile(String val, BrainfuckVisitor visitor, BrainfuckPassManager passes) throws BrainfuckCompilationException {
         BrainfuckCompiler compiler = new BrainfuckCompiler();
         compiler.parse(val);
+        compiler.apply(passes);
         compiler.visit(visitor);
     }
 
+    /**
+     * Compiles the program read from {@code reader} with a {@link BrainfuckStreamCompiler}, which visits it as it is read,
+     * without building a tree of the whole program.
+     *
+     * @param reader The reader to read the program from.
+     * @param visitor The visitor to visit the program with.
+     * @param fold Whether to fold runs of instructions.
+     * @param range The values the cells hold.
+     * @throws BrainfuckCompilationException If the program cannot be read, or is invalid.
+     */
+    public static void compile(Reader reader, BrainfuckVisitor visitor, boolean fold, CellRange range) throws BrainfuckCompilationException {
+        new BrainfuckStreamCompiler(visitor, fold, range).compile(reader);
+    }
+
+    /**
+     * Compiles the UTF-8 program read from {@code channel}, as {@link #compile(Reader, BrainfuckVisitor, boolean, CellRange)}.
+     *
+     * @param channel The channel to read the program from.
+     * @param visitor The visitor to visit the program with.
+     * @param fold Whether to fold runs of instructions.
+     * @param range The values the cells hold.
+     * @throws BrainfuckCompilationException If the program cannot be read, or is invalid.
+     */
+    public static void compile(ReadableByteChannel channel, BrainfuckVisitor visitor, boolean fold, CellRange range) throws BrainfuckCompilationException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        compile(Channels.newReader(channel, decoder, -1), visitor, fold, range);
+    }
+
+    /**
+     * Visits {@code program} with a {@link BrainfuckStreamCompiler}, without building a tree of it.
+     *
+     * @param program The program to visit.
+     * @param visitor The visitor to visit the program with.
+     * @param fold Whether to fold runs of instructions.
+     * @param range The values the cells hold.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    public static void compile(FlatProgram program, BrainfuckVisitor visitor, boolean fold, CellRange range) throws BrainfuckCompilationException {
+        new BrainfuckStreamCompiler(visitor, fold, range).compile(program);
+    }
+
+    /**
+     * Parses a program into a {@link FlatProgram}, rather than a tree.
+     *
+     * @param val The source of the program.
+     * @return The parsed program.
+     * @throws BrainfuckCompilationException If the program has unbalanced brackets.
+     */
+    public static FlatProgram flatten(String val) throws BrainfuckCompilationException {
+        return new BrainfuckCompiler().parseFlat(val);
+    }
+
     public void parse(String val) throws BrainfuckCompilationException {
-        this.program = new CharMatrix(val);
-        this.bracketCheck();
+        this.nodes = this.parseFlat(val).toNodes();
+    }
 
-        Stack<WhileNode> loopStack = new Stack<>();
-        Stack<List<Node>> nodeStack = new Stack<>();
-        nodeStack.push(new ArrayList<>());
-        this.program.forEach((loc, ch) -> {
-            if(ch == '[') {
-                WhileNode node = new WhileNode(loc, null, new ArrayList<>());
-                nodeStack.peek().add(node);
-                nodeStack.push(node.getNodes());
-                loopStack.push(node);
-            } else if (ch == ']') {
-                WhileNode popped = loopStack.pop();
-                popped.setEnd(loc);
-                nodeStack.pop();
-            } else {
-                Kind kind = Kind.from(ch);
-                if(kind != null) {
-                    nodeStack.peek().add(new GeneralNode(loc, kind));
-                }
+    private FlatProgram parseFlat(String val) throws BrainfuckCompilationException {
+        FlatProgram.Builder builder = new FlatProgram.Builder();
+        boolean unbalanced = false;
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < val.length(); i++) {
+            char ch = val.charAt(i);
+            if (ch == '\n') {
+                y++;
+                x = 0;
+                continue;
+            } else if (ch == '\r') {
+                continue;
             }
-        });
 
-        this.nodes = nodeStack.pop();
+            Kind kind = Kind.from(ch);
+            if (kind == Kind.WHILE_END && builder.depth() == 0) {
+                unbalanced = true;
+            } else if (kind != null) {
+                builder.add(kind, 0, x, y);
+            }
+            x++;
+        }
+
+        if (unbalanced || builder.depth() != 0) {
+            //only needed to point out the brackets
+            this.program = new CharMatrix(val);
+            this.bracketCheck();
+        }
+        return builder.build();
+    }
+
+    public void apply(BrainfuckPass pass) throws BrainfuckCompilationException {
+        this.nodes = pass.apply(this.nodes);
+    }
+
+    public void apply(BrainfuckPassManager passes) throws BrainfuckCompilationException {
+        this.nodes = passes.apply(this.nodes);
     }
 
     public void visit(BrainfuckVisitor compiler) throws BrainfuckCompilationException {
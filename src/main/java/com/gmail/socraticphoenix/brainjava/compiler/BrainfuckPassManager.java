@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler;
+
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered list of {@link BrainfuckPass}es, applied one after another by the {@link BrainfuckCompiler}. For each pass
+ * applied, the manager records how long it took and how many nodes it changed, as a {@link Record}.
+ */
+public class BrainfuckPassManager {
+    private List<BrainfuckPass> passes;
+    private List<Record> records;
+
+    public BrainfuckPassManager(BrainfuckPass... passes) {
+        this.passes = new ArrayList<>();
+        this.records = new ArrayList<>();
+        Collections.addAll(this.passes, passes);
+    }
+
+    public void add(BrainfuckPass pass) {
+        this.passes.add(pass);
+    }
+
+    public List<BrainfuckPass> getPasses() {
+        return this.passes;
+    }
+
+    /**
+     * @return The records of every pass applied so far, in the order they were applied.
+     */
+    public List<Record> getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Applies every pass, in order, to {@code nodes}.
+     *
+     * @param nodes The program to transform.
+     * @return The transformed program.
+     * @throws BrainfuckCompilationException If a pass fails.
+     */
+    public List<Node> apply(List<Node> nodes) throws BrainfuckCompilationException {
+        for (BrainfuckPass pass : this.passes) {
+            Map<Node, Boolean> before = new IdentityHashMap<>();
+            collect(nodes, before);
+
+            long start = System.nanoTime();
+            nodes = pass.apply(nodes);
+            long time = System.nanoTime() - start;
+
+            this.records.add(new Record(pass, time, changes(nodes, before)));
+        }
+        return nodes;
+    }
+
+    private static void collect(List<Node> nodes, Map<Node, Boolean> seen) {
+        for (Node node : nodes) {
+            seen.put(node, true);
+            collect(children(node), seen);
+        }
+    }
+
+    /**
+     * Counts the nodes that were not in the program before the pass. Loops rebuilt around a transformed body are not
+     * counted themselves.
+     */
+    private static int changes(List<Node> nodes, Map<Node, Boolean> before) {
+        int changes = 0;
+        for (Node node : nodes) {
+            if (node.kind() != Kind.WHILE_START && !before.containsKey(node)) {
+                changes++;
+            }
+            changes += changes(children(node), before);
+        }
+        return changes;
+    }
+
+    private static List<Node> children(Node node) {
+        if (node instanceof WhileNode) {
+            return ((WhileNode) node).getNodes();
+        } else if (node instanceof BlockNode) {
+            return ((BlockNode) node).getNodes();
+        } else if (node instanceof PrefixNode) {
+            return ((PrefixNode) node).getNodes();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * The time taken by, and the number of nodes changed by, one application of a pass.
+     */
+    public static class Record {
+        private BrainfuckPass pass;
+        private long nanos;
+        private int changes;
+
+        public Record(BrainfuckPass pass, long nanos, int changes) {
+            this.pass = pass;
+            this.nanos = nanos;
+            this.changes = changes;
+        }
+
+        public BrainfuckPass getPass() {
+            return this.pass;
+        }
+
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        public int getChanges() {
+            return this.changes;
+        }
+
+        @Override
+        public String toString() {
+            return this.pass.getClass().getSimpleName() + ": " + String.format("%.3f", this.nanos / 1e6) + "ms, " + this.changes + " changes";
+        }
+
+    }
+
+}
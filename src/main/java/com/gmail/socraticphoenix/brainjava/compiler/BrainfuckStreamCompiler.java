@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.FlatProgram;
+import com.gmail.socraticphoenix.brainjava.ast.GeneralNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Loc;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Compiles a program as it is read, visiting its nodes in batches of at most {@link #BATCH} instead of building a tree
+ * of the whole program, so that memory use is proportional to the depth of its loops, rather than its size. A
+ * {@link FlatProgram} is visited in the same way, so that it never needs to be built into a tree either.
+ * <p>
+ * Loops are visited through {@link BrainfuckVisitor#visitWhile(WhileNode)} with a {@link WhileNode} that has no nodes,
+ * followed by their start, their body in any number of {@link BrainfuckVisitor#visitAll(List)} calls, and their end.
+ * Since the program is never whole, no {@link BrainfuckPass} can be applied, but runs of instructions can be folded
+ * like the {@link com.gmail.socraticphoenix.brainjava.compiler.pass.FoldingPass FoldingPass} would. Unbalanced brackets
+ * are only found when they are read, after the visitor has already seen the program before them, and are pointed out
+ * by their line and column, rather than in the program.
+ */
+public class BrainfuckStreamCompiler {
+    /**
+     * The most nodes visited in one {@link BrainfuckVisitor#visitAll(List)} call.
+     */
+    public static final int BATCH = 1024;
+
+    private Stack<BrainfuckVisitor> visitors;
+    private Stack<WhileNode> loops;
+    private List<Node> batch;
+    private boolean fold;
+    private boolean mixed;
+
+    private int x;
+    private int y;
+
+    private Kind run;
+    private int runLength;
+    private int delta;
+    private int startX;
+    private int startY;
+    private int endX;
+    private int endY;
+
+    /**
+     * Creates a new stream compiler for cells whose range contains zero.
+     *
+     * @param visitor The visitor to visit the program with.
+     * @param fold Whether to fold runs of instructions into {@link AddNode}s and {@link MoveNode}s.
+     */
+    public BrainfuckStreamCompiler(BrainfuckVisitor visitor, boolean fold) {
+        this(visitor, fold, new CellRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Creates a new stream compiler, which folds runs of instructions only where it is exact for cells holding values in
+     * {@code range}, as the {@link com.gmail.socraticphoenix.brainjava.compiler.pass.FoldingPass FoldingPass} does.
+     *
+     * @param visitor The visitor to visit the program with.
+     * @param fold Whether to fold runs of instructions into {@link AddNode}s and {@link MoveNode}s.
+     * @param range The values the cells hold.
+     */
+    public BrainfuckStreamCompiler(BrainfuckVisitor visitor, boolean fold, CellRange range) {
+        this.visitors = new Stack<>();
+        this.visitors.push(visitor);
+        this.loops = new Stack<>();
+        this.batch = new ArrayList<>();
+        this.fold = fold;
+        this.mixed = range.contains(0);
+    }
+
+    /**
+     * Reads the program from {@code reader} until it ends, and visits it. The reader is not closed.
+     *
+     * @param reader The reader to read the program from.
+     * @throws BrainfuckCompilationException If the program cannot be read, has unbalanced brackets, or an error occurs
+     * while visiting.
+     */
+    public void compile(Reader reader) throws BrainfuckCompilationException {
+        this.visitors.peek().visitStart();
+
+        char[] buffer = new char[8192];
+        int read;
+        try {
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') {
+                        this.y++;
+                        this.x = 0;
+                    } else if (c != '\r') {
+                        Kind kind = Kind.from(c);
+                        if (kind != null) {
+                            this.accept(kind, step(kind));
+                        }
+                        this.x++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new BrainfuckCompilationException("Failed to read program", e);
+        }
+
+        this.end();
+    }
+
+    /**
+     * Visits {@code program} in the same way as a program that is read, without building a tree of it.
+     *
+     * @param program The program to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    public void compile(FlatProgram program) throws BrainfuckCompilationException {
+        this.visitors.peek().visitStart();
+        for (int i = 0; i < program.size(); i++) {
+            this.x = program.column(i);
+            this.y = program.line(i);
+            Kind kind = program.kind(i);
+            this.accept(kind, kind.isSynthetic() ? program.operand(i) : step(kind));
+        }
+        this.end();
+    }
+
+    private void end() throws BrainfuckCompilationException {
+        this.flush();
+        if (!this.loops.isEmpty()) {
+            Loc start = this.loops.peek().start();
+            throw new BrainfuckPointedCompilationException("Unbalanced brackets", "[ at " + describe(start.x, start.y) + " is never closed");
+        }
+        this.visitors.pop().visitEnd();
+    }
+
+    private void accept(Kind kind, int delta) throws BrainfuckCompilationException {
+        switch (kind) {
+            case INCREMENT:
+            case DECREMENT:
+            case ADVANCE:
+            case RETREAT:
+            case ADD:
+            case MOVE:
+                this.extend(kind, delta);
+                break;
+            case WHILE_START:
+                this.flush();
+                WhileNode loop = new WhileNode(new Loc(this.x, this.y), null, null);
+                BrainfuckVisitor visitor = this.visitors.peek().visitWhile(loop);
+                visitor.visitStart();
+                this.visitors.push(visitor);
+                this.loops.push(loop);
+                break;
+            case WHILE_END:
+                if (this.loops.isEmpty()) {
+                    throw new BrainfuckPointedCompilationException("Unbalanced brackets", "] at " + describe(this.x, this.y) + " is never opened");
+                }
+                this.flush();
+                this.loops.pop().setEnd(new Loc(this.x, this.y));
+                this.visitors.pop().visitEnd();
+                break;
+            default:
+                this.fold();
+                this.add(new GeneralNode(new Loc(this.x, this.y), kind));
+                break;
+        }
+    }
+
+    private void extend(Kind kind, int delta) throws BrainfuckCompilationException {
+        if (!this.fold) {
+            Loc loc = new Loc(this.x, this.y);
+            if (!kind.isSynthetic()) {
+                this.add(new GeneralNode(loc, kind));
+            } else {
+                this.add(kind == Kind.ADD ? new AddNode(loc, loc, delta) : new MoveNode(loc, loc, delta));
+            }
+            return;
+        }
+
+        if (this.runLength != 0 && (isAdd(this.run) != isAdd(kind) || this.reverses(kind, delta))) {
+            this.fold();
+        }
+        if (this.runLength == 0) {
+            this.run = kind;
+            this.startX = this.x;
+            this.startY = this.y;
+        }
+        this.runLength++;
+        this.delta += delta;
+        this.endX = this.x;
+        this.endY = this.y;
+    }
+
+    private void fold() throws BrainfuckCompilationException {
+        if (this.runLength == 0) {
+            return;
+        }
+
+        Loc start = new Loc(this.startX, this.startY);
+        if (this.runLength == 1 && !this.run.isSynthetic()) {
+            this.add(new GeneralNode(start, this.run));
+        } else if (this.delta != 0) {
+            Loc end = new Loc(this.endX, this.endY);
+            this.add(isAdd(this.run) ? new AddNode(start, end, this.delta) : new MoveNode(start, end, this.delta));
+        }
+        this.runLength = 0;
+        this.delta = 0;
+    }
+
+    private void add(Node node) throws BrainfuckCompilationException {
+        this.batch.add(node);
+        if (this.batch.size() == BATCH) {
+            this.visitBatch();
+        }
+    }
+
+    private void flush() throws BrainfuckCompilationException {
+        this.fold();
+        if (!this.batch.isEmpty()) {
+            this.visitBatch();
+        }
+    }
+
+    private void visitBatch() throws BrainfuckCompilationException {
+        this.visitors.peek().visitAll(this.batch);
+        this.batch = new ArrayList<>();
+    }
+
+    /**
+     * @return Whether a step of {@code delta} goes in the opposite direction of the current run, and may not be folded
+     * into it.
+     */
+    private boolean reverses(Kind kind, int delta) {
+        return !this.mixed && isAdd(kind) && Integer.signum(delta) != Integer.signum(this.delta);
+    }
+
+    private static int step(Kind kind) {
+        return kind == Kind.DECREMENT || kind == Kind.RETREAT ? -1 : 1;
+    }
+
+    private static boolean isAdd(Kind kind) {
+        return kind == Kind.INCREMENT || kind == Kind.DECREMENT || kind == Kind.ADD;
+    }
+
+    private static String describe(int x, int y) {
+        return "line " + (y + 1) + ", column " + (x + 1);
+    }
+
+}
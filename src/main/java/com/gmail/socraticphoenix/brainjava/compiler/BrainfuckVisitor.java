@@ -21,7 +21,14 @@
  */
 package com.gmail.socraticphoenix.brainjava.compiler;
 
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
 import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
 import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
 
 import java.util.List;
@@ -46,6 +53,110 @@ public interface BrainfuckVisitor {
 
     void visitEnd() throws BrainfuckCompilationException;
 
+    /**
+     * Visits a folded run of increments and decrements. By default, this visits {@code |delta|} single increments or
+     * decrements.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitAdd(AddNode node) throws BrainfuckCompilationException {
+        for (int i = 0; i < Math.abs(node.getDelta()); i++) {
+            if (node.getDelta() > 0) {
+                visitIncrement(node);
+            } else {
+                visitDecrement(node);
+            }
+        }
+    }
+
+    /**
+     * Visits a folded run of advances and retreats. By default, this visits {@code |delta|} single advances or retreats.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitMove(MoveNode node) throws BrainfuckCompilationException {
+        for (int i = 0; i < Math.abs(node.getDelta()); i++) {
+            if (node.getDelta() > 0) {
+                visitAdvance(node);
+            } else {
+                visitRetreat(node);
+            }
+        }
+    }
+
+    /**
+     * Visits a loop recognized as clearing the current cell. By default, this visits it as a regular loop.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitSetZero(SetZeroNode node) throws BrainfuckCompilationException {
+        visitLoop(node);
+    }
+
+    /**
+     * Visits a loop recognized as a multiply-add of the current cell into other cells. By default, this visits it as a
+     * regular loop.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitMulAdd(MulAddNode node) throws BrainfuckCompilationException {
+        visitLoop(node);
+    }
+
+    /**
+     * Visits a loop recognized as a search for the next zero cell. By default, this visits it as a regular loop.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitScan(ScanNode node) throws BrainfuckCompilationException {
+        visitLoop(node);
+    }
+
+    /**
+     * Visits a straight-line block of operations at offsets from the pointer. By default, this visits each operation
+     * after moving the pointer to it, and then moves the pointer to where the block leaves it.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitBlock(BlockNode node) throws BrainfuckCompilationException {
+        int position = 0;
+        for (int i = 0; i < node.getOffsets().length; i++) {
+            Node op = node.getNodes().get(i);
+            int offset = node.getOffsets()[i];
+            if (offset != position) {
+                visitMove(new MoveNode(op.start(), op.start(), offset - position));
+                position = offset;
+            }
+            visitNode(op);
+        }
+        if (node.getShift() != position) {
+            visitMove(new MoveNode(node.end(), node.end(), node.getShift() - position));
+        }
+    }
+
+    /**
+     * Visits the part of the program evaluated at compile time. By default, this visits the original nodes.
+     *
+     * @param node The node to visit.
+     * @throws BrainfuckCompilationException If an error occurs while visiting.
+     */
+    default void visitPrefix(PrefixNode node) throws BrainfuckCompilationException {
+        visitAll(node.getNodes());
+    }
+
+    default void visitLoop(WhileNode node) throws BrainfuckCompilationException {
+        BrainfuckVisitor visitor = visitWhile(node);
+        visitor.visitStart();
+        visitor.visitAll(node.getNodes());
+        visitor.visitEnd();
+    }
+
     default void visitNode(Node node) throws BrainfuckCompilationException {
         switch (node.kind()) {
             case ADVANCE:
@@ -66,12 +177,29 @@ public interface BrainfuckVisitor {
             case OUTPUT:
                 visitOutput(node);
                 break;
+            case ADD:
+                visitAdd((AddNode) node);
+                break;
+            case MOVE:
+                visitMove((MoveNode) node);
+                break;
+            case SET_ZERO:
+                visitSetZero((SetZeroNode) node);
+                break;
+            case MUL_ADD:
+                visitMulAdd((MulAddNode) node);
+                break;
+            case SCAN:
+                visitScan((ScanNode) node);
+                break;
+            case BLOCK:
+                visitBlock((BlockNode) node);
+                break;
+            case PREFIX:
+                visitPrefix((PrefixNode) node);
+                break;
             case WHILE_START:
-                WhileNode whileNode = (WhileNode) node;
-                BrainfuckVisitor visitor = visitWhile(whileNode);
-                visitor.visitStart();
-                visitor.visitAll(whileNode.getNodes());
-                visitor.visitEnd();
+                visitLoop((WhileNode) node);
                 break;
         }
     }
@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler;
+
+import java.math.BigInteger;
+
+/**
+ * The arithmetic of cells holding values from {@code min} to {@code max}, wrapping to the other bound when stepped past
+ * one, as the cells created by {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models#boundedCell(long, long)}
+ * do, for evaluating programs without compiling them.
+ */
+public class CellRange {
+    private long min;
+    private long max;
+
+    public CellRange(long min, long max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public long getMin() {
+        return this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @return Whether {@code value} is within this range. Cells start at zero, so if zero is within the range, no cell
+     * ever leaves it, and any sequence of steps adds up to one wrapped delta.
+     */
+    public boolean contains(long value) {
+        return value >= this.min && value <= this.max;
+    }
+
+    /**
+     * @return Whether the cell model for this range {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel#wraps()
+     * wraps}, so that recognized loops are replaced by arithmetic.
+     */
+    public boolean wraps() {
+        return (this.min == Long.MIN_VALUE && this.max == Long.MAX_VALUE) ||
+                (this.min <= 0 && this.max >= 0 && this.min >= Integer.MIN_VALUE && this.max <= Integer.MAX_VALUE);
+    }
+
+    /**
+     * Computes the value of a cell holding {@code value} after it is stepped {@code |delta|} times.
+     */
+    public long add(long value, long delta) {
+        if (this.min == Long.MIN_VALUE && this.max == Long.MAX_VALUE) {
+            return value + delta;
+        }
+
+        //a cell may start outside of the range, in which case it only wraps when stepped away from it
+        if (value < this.min) {
+            if (delta < 0) {
+                value = this.max;
+                delta++;
+            } else {
+                long steps = Math.min(delta, this.min - value);
+                value += steps;
+                delta -= steps;
+            }
+        } else if (value > this.max) {
+            if (delta > 0) {
+                value = this.min;
+                delta--;
+            } else {
+                long steps = Math.max(delta, this.max - value);
+                value += steps;
+                delta -= steps;
+            }
+        }
+        if (delta == 0) {
+            return value;
+        }
+
+        long span = this.max - this.min + 1;
+        if (span <= 0) {
+            BigInteger bigSpan = BigInteger.valueOf(this.max).subtract(BigInteger.valueOf(this.min)).add(BigInteger.ONE);
+            return BigInteger.valueOf(value).subtract(BigInteger.valueOf(this.min)).add(BigInteger.valueOf(delta)).mod(bigSpan).add(BigInteger.valueOf(this.min)).longValue();
+        }
+        long index = value - this.min;
+        long shift = Math.floorMod(delta, span);
+        return this.min + (index >= span - shift ? index - (span - shift) : index + shift);
+    }
+
+    /**
+     * Computes {@code target} plus {@code counter} times {@code factor}, wrapped into the range. Only exact if the range
+     * {@link #wraps()}.
+     */
+    public long mulAdd(long target, long counter, int factor) {
+        if (this.min == Long.MIN_VALUE && this.max == Long.MAX_VALUE) {
+            return target + counter * factor;
+        }
+        return this.min + Math.floorMod(target + counter * factor - this.min, this.max - this.min + 1);
+    }
+
+    /**
+     * @return The value of a cell which is given {@code codepoint} as input.
+     */
+    public long fromCodepoint(int codepoint) {
+        long span = this.max - this.min + 1;
+        if (span <= 0 || (codepoint >= this.min && codepoint <= this.max)) {
+            return codepoint;
+        }
+        return this.min + Math.floorMod(codepoint - this.min, span);
+    }
+
+}
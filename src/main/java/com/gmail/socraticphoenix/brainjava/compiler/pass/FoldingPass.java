@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Loc;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BrainfuckPass} that folds runs of {@code +}/{@code -} into {@link AddNode}s and runs of {@code >}/{@code <}
+ * into {@link MoveNode}s. Runs that cancel out are removed entirely, and lone instructions are left as they are.
+ * <p>
+ * If the cells may hold a value outside of their range, which is only the case when zero is outside of it, a step away
+ * from the range and a step back do not cancel out, so only runs of {@code +} or of {@code -} alone are folded.
+ */
+public class FoldingPass implements BrainfuckPass {
+    private boolean mixed;
+
+    /**
+     * Creates a folding pass for cells whose range contains zero.
+     */
+    public FoldingPass() {
+        this.mixed = true;
+    }
+
+    /**
+     * Creates a folding pass for cells holding values in {@code range}.
+     *
+     * @param range The values the cells hold.
+     */
+    public FoldingPass(CellRange range) {
+        this.mixed = range.contains(0);
+    }
+
+    @Override
+    public List<Node> apply(List<Node> nodes) {
+        List<Node> result = new ArrayList<>();
+        List<Node> run = new ArrayList<>();
+        boolean add = false;
+        int delta = 0;
+
+        for (Node node : nodes) {
+            boolean isAdd = isAdd(node);
+            if (!run.isEmpty() && (isAdd != add || !isRun(node) || this.reverses(node, delta))) {
+                fold(run, add, delta, result);
+                run.clear();
+                delta = 0;
+            }
+
+            if (isRun(node)) {
+                run.add(node);
+                add = isAdd;
+                delta += delta(node);
+            } else if (node.kind() == Kind.WHILE_START) {
+                WhileNode loop = (WhileNode) node;
+                result.add(new WhileNode(loop.start(), loop.end(), this.apply(loop.getNodes())));
+            } else {
+                result.add(node);
+            }
+        }
+
+        if (!run.isEmpty()) {
+            fold(run, add, delta, result);
+        }
+        return result;
+    }
+
+    private void fold(List<Node> run, boolean add, int delta, List<Node> result) {
+        if (run.size() == 1) {
+            result.add(run.get(0));
+        } else if (delta != 0) {
+            Loc start = run.get(0).start();
+            Loc end = run.get(run.size() - 1).end();
+            result.add(add ? new AddNode(start, end, delta) : new MoveNode(start, end, delta));
+        }
+    }
+
+    /**
+     * @return Whether {@code node} steps the cell in the opposite direction of a run adding up to {@code delta}, and may
+     * not be folded into it.
+     */
+    private boolean reverses(Node node, int delta) {
+        return !this.mixed && isAdd(node) && Integer.signum(delta(node)) != Integer.signum(delta);
+    }
+
+    private static boolean isRun(Node node) {
+        switch (node.kind()) {
+            case INCREMENT:
+            case DECREMENT:
+            case ADD:
+            case ADVANCE:
+            case RETREAT:
+            case MOVE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isAdd(Node node) {
+        switch (node.kind()) {
+            case INCREMENT:
+            case DECREMENT:
+            case ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int delta(Node node) {
+        switch (node.kind()) {
+            case INCREMENT:
+            case ADVANCE:
+                return 1;
+            case DECREMENT:
+            case RETREAT:
+                return -1;
+            case ADD:
+                return ((AddNode) node).getDelta();
+            case MOVE:
+                return ((MoveNode) node).getDelta();
+            default:
+                return 0;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link BrainfuckPass} that recognizes clear loops, such as {@code [-]}, as {@link SetZeroNode}s, and copy or multiply
+ * loops, such as {@code [->+<]} and {@code [->++>+++<<]}, as {@link MulAddNode}s.
+ */
+public class IdiomPass implements BrainfuckPass {
+
+    @Override
+    public List<Node> apply(List<Node> nodes) {
+        List<Node> result = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.kind() == Kind.WHILE_START) {
+                WhileNode loop = (WhileNode) node;
+                result.add(recognize(new WhileNode(loop.start(), loop.end(), this.apply(loop.getNodes()))));
+            } else {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyzes a loop, which is recognized if its body only adds to cells and moves the pointer, returns the pointer to
+     * where it started, and steps the current cell by exactly one.
+     *
+     * @param loop The loop to analyze.
+     * @return A {@link SetZeroNode} or {@link MulAddNode} equivalent to the loop, or the loop itself if it was not recognized.
+     */
+    public static WhileNode recognize(WhileNode loop) {
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        int offset = 0;
+        for (Node node : loop.getNodes()) {
+            switch (node.kind()) {
+                case INCREMENT:
+                    deltas.merge(offset, 1, Integer::sum);
+                    break;
+                case DECREMENT:
+                    deltas.merge(offset, -1, Integer::sum);
+                    break;
+                case ADD:
+                    deltas.merge(offset, ((AddNode) node).getDelta(), Integer::sum);
+                    break;
+                case ADVANCE:
+                    offset++;
+                    break;
+                case RETREAT:
+                    offset--;
+                    break;
+                case MOVE:
+                    offset += ((MoveNode) node).getDelta();
+                    break;
+                default:
+                    return loop;
+            }
+        }
+
+        Integer step = deltas.remove(0);
+        if (offset != 0 || step == null || (step != 1 && step != -1)) {
+            return loop;
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+
+        if (deltas.isEmpty()) {
+            return new SetZeroNode(loop.start(), loop.end(), loop.getNodes());
+        }
+
+        //the loop runs -step * cell times, so each iteration's delta is multiplied by that
+        int[] offsets = new int[deltas.size()];
+        int[] factors = new int[deltas.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+            offsets[i] = entry.getKey();
+            factors[i] = -step * entry.getValue();
+            i++;
+        }
+        return new MulAddNode(loop.start(), loop.end(), loop.getNodes(), offsets, factors);
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BrainfuckPass} that tracks the pointer across straight-line code, replacing each run of cell operations and
+ * pointer movement with a {@link BlockNode}. Within a block, every operation addresses its cell by an offset from the
+ * pointer at the start of the block, and the pointer itself is only moved once, at the end of the block. Runs without
+ * any movement are left as they are, and long runs are split into blocks of at most {@link #MAX_BLOCK} nodes.
+ */
+public class OffsetPass implements BrainfuckPass {
+    /**
+     * The most nodes in one block, so that a single block never makes for an overly large method.
+     */
+    public static final int MAX_BLOCK = 128;
+
+    @Override
+    public List<Node> apply(List<Node> nodes) {
+        List<Node> result = new ArrayList<>();
+        List<Node> run = new ArrayList<>();
+
+        for (Node node : nodes) {
+            if (isStraight(node)) {
+                run.add(node);
+                if (run.size() == MAX_BLOCK) {
+                    block(run, result);
+                    run.clear();
+                }
+                continue;
+            }
+
+            block(run, result);
+            run.clear();
+            if (node.kind() == Kind.WHILE_START) {
+                WhileNode loop = (WhileNode) node;
+                result.add(new WhileNode(loop.start(), loop.end(), this.apply(loop.getNodes())));
+            } else {
+                result.add(node);
+            }
+        }
+
+        block(run, result);
+        return result;
+    }
+
+    private void block(List<Node> run, List<Node> result) {
+        List<Node> ops = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        int position = 0;
+        boolean moves = false;
+
+        for (Node node : run) {
+            switch (node.kind()) {
+                case ADVANCE:
+                    position++;
+                    moves = true;
+                    break;
+                case RETREAT:
+                    position--;
+                    moves = true;
+                    break;
+                case MOVE:
+                    position += ((MoveNode) node).getDelta();
+                    moves = true;
+                    break;
+                case INCREMENT:
+                    ops.add(new AddNode(node.start(), node.end(), 1));
+                    offsets.add(position);
+                    break;
+                case DECREMENT:
+                    ops.add(new AddNode(node.start(), node.end(), -1));
+                    offsets.add(position);
+                    break;
+                default:
+                    ops.add(node);
+                    offsets.add(position);
+                    break;
+            }
+        }
+
+        if (!moves || ops.isEmpty()) {
+            result.addAll(run);
+        } else {
+            int[] offsetArray = new int[offsets.size()];
+            for (int i = 0; i < offsetArray.length; i++) {
+                offsetArray[i] = offsets.get(i);
+            }
+            result.add(new BlockNode(run.get(0).start(), run.get(run.size() - 1).end(), ops, offsetArray, position));
+        }
+    }
+
+    private static boolean isStraight(Node node) {
+        switch (node.kind()) {
+            case ADVANCE:
+            case RETREAT:
+            case MOVE:
+            case INCREMENT:
+            case DECREMENT:
+            case ADD:
+            case INPUT:
+            case OUTPUT:
+            case SET_ZERO:
+            case MUL_ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
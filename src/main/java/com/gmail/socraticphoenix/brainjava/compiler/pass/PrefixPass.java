@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link BrainfuckPass} that runs the start of the program at compile time, and replaces it with a {@link PrefixNode}
+ * holding the output and tape it produces. Evaluation proceeds one top-level node at a time, and stops before the first
+ * node that reads input, runs for more than the step budget, or would leave more than {@link #MAX_CELLS} non-zero cells
+ * or more than {@link #MAX_OUTPUT} characters of output to embed in the compiled program. As a tape sets each non-zero
+ * cell with code of a fixed size, however far apart the cells are, these limits also bound the size of that code.
+ * <p>
+ * Cells are assumed to hold values from {@code min} to {@code max}, with the arithmetic of a {@link CellRange}.
+ */
+public class PrefixPass implements BrainfuckPass {
+    public static final int MAX_CELLS = 1 << 12;
+    public static final int MAX_OUTPUT = 1 << 16;
+
+    private CellRange range;
+    private long budget;
+
+    public PrefixPass(long min, long max, long budget) {
+        this.range = new CellRange(min, max);
+        this.budget = budget;
+    }
+
+    @Override
+    public List<Node> apply(List<Node> nodes) {
+        Machine machine = new Machine();
+        int evaluated = 0;
+        for (Node node : nodes) {
+            machine.mark();
+            if (!machine.run(node) || machine.nonZero > MAX_CELLS || machine.output.length() > MAX_OUTPUT) {
+                machine.rollback();
+                break;
+            }
+            evaluated++;
+        }
+
+        if (evaluated == 0) {
+            return nodes;
+        }
+
+        List<Node> prefix = new ArrayList<>(nodes.subList(0, evaluated));
+        List<Node> result = new ArrayList<>();
+        //the tape is never read again if the whole program was evaluated
+        result.add(evaluated == nodes.size() ? machine.toNode(prefix, false) : machine.toNode(prefix, true));
+        result.addAll(nodes.subList(evaluated, nodes.size()));
+        return result;
+    }
+
+    /**
+     * The state of the evaluation. Changes made since the last {@link #mark()} are recorded in an undo log, holding the
+     * old value of each cell the first time it is set, so that a node which cannot be evaluated is undone in time
+     * proportional to what it changed, rather than to the size of the tape.
+     */
+    private class Machine {
+        private long[] tape;
+        private int[] marks;
+        private int origin;
+        private int pointer;
+        private int nonZero;
+        private long steps;
+        private StringBuilder output;
+
+        private int mark;
+        private int[] logCells;
+        private long[] logValues;
+        private int logSize;
+        private int markPointer;
+        private int markNonZero;
+        private long markSteps;
+        private int markOutput;
+
+        Machine() {
+            this.tape = new long[64];
+            this.marks = new int[64];
+            this.origin = 32;
+            this.output = new StringBuilder();
+            this.logCells = new int[64];
+            this.logValues = new long[64];
+        }
+
+        /**
+         * Starts a new attempt, which {@link #rollback()} undoes.
+         */
+        void mark() {
+            this.mark++;
+            this.logSize = 0;
+            this.markPointer = this.pointer;
+            this.markNonZero = this.nonZero;
+            this.markSteps = this.steps;
+            this.markOutput = this.output.length();
+        }
+
+        /**
+         * Restores the state as of the last {@link #mark()}. Cells the tape grew by stay, as they are all zero.
+         */
+        void rollback() {
+            for (int i = this.logSize - 1; i >= 0; i--) {
+                this.tape[this.origin + this.logCells[i]] = this.logValues[i];
+            }
+            this.logSize = 0;
+            this.pointer = this.markPointer;
+            this.nonZero = this.markNonZero;
+            this.steps = this.markSteps;
+            this.output.setLength(this.markOutput);
+        }
+
+        boolean run(Node node) {
+            if (++this.steps > PrefixPass.this.budget) {
+                return false;
+            }
+
+            switch (node.kind()) {
+                case INCREMENT:
+                    this.set(PrefixPass.this.range.add(this.get(), 1));
+                    return true;
+                case DECREMENT:
+                    this.set(PrefixPass.this.range.add(this.get(), -1));
+                    return true;
+                case ADD:
+                    this.set(PrefixPass.this.range.add(this.get(), ((AddNode) node).getDelta()));
+                    return true;
+                case ADVANCE:
+                    return this.move(1);
+                case RETREAT:
+                    return this.move(-1);
+                case MOVE:
+                    return this.move(((MoveNode) node).getDelta());
+                case OUTPUT:
+                    long codepoint = this.get();
+                    if (codepoint < 0 || codepoint > Character.MAX_CODE_POINT) {
+                        //left for the compiled program to fail on
+                        return false;
+                    } else if (codepoint >= Character.MIN_SURROGATE && codepoint <= Character.MAX_SURROGATE) {
+                        //adjacent lone surrogates would merge into a pair in the folded output
+                        return false;
+                    }
+                    this.output.appendCodePoint((int) codepoint);
+                    return true;
+                case WHILE_START:
+                case SET_ZERO:
+                case MUL_ADD:
+                case SCAN:
+                    List<Node> body = ((WhileNode) node).getNodes();
+                    while (this.get() != 0) {
+                        if (!this.run(body) || ++this.steps > PrefixPass.this.budget) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case BLOCK:
+                    BlockNode block = (BlockNode) node;
+                    int base = this.pointer;
+                    for (int i = 0; i < block.getOffsets().length; i++) {
+                        if (!this.move(base + block.getOffsets()[i] - this.pointer) || !this.run(block.getNodes().get(i))) {
+                            return false;
+                        }
+                    }
+                    return this.move(base + block.getShift() - this.pointer);
+                default:
+                    return false;
+            }
+        }
+
+        boolean run(List<Node> nodes) {
+            for (Node node : nodes) {
+                if (!this.run(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean move(int delta) {
+            this.pointer += delta;
+            int index = this.origin + this.pointer;
+            if (index < 0) {
+                int grow = Math.max(this.tape.length, -index);
+                long[] grown = new long[this.tape.length + grow];
+                System.arraycopy(this.tape, 0, grown, grow, this.tape.length);
+                int[] marks = new int[grown.length];
+                System.arraycopy(this.marks, 0, marks, grow, this.marks.length);
+                this.tape = grown;
+                this.marks = marks;
+                this.origin += grow;
+            } else if (index >= this.tape.length) {
+                this.tape = Arrays.copyOf(this.tape, Math.max(this.tape.length * 2, index + 1));
+                this.marks = Arrays.copyOf(this.marks, this.tape.length);
+            }
+            return this.tape.length <= 1 << 20;
+        }
+
+        long get() {
+            return this.tape[this.origin + this.pointer];
+        }
+
+        void set(long value) {
+            int index = this.origin + this.pointer;
+            long old = this.tape[index];
+            if (old == 0 && value != 0) {
+                this.nonZero++;
+            } else if (old != 0 && value == 0) {
+                this.nonZero--;
+            }
+            if (this.marks[index] != this.mark) {
+                //cells are logged by their position, as the origin moves when the tape grows to the left
+                this.marks[index] = this.mark;
+                if (this.logSize == this.logCells.length) {
+                    this.logCells = Arrays.copyOf(this.logCells, this.logSize * 2);
+                    this.logValues = Arrays.copyOf(this.logValues, this.logSize * 2);
+                }
+                this.logCells[this.logSize] = this.pointer;
+                this.logValues[this.logSize] = old;
+                this.logSize++;
+            }
+            this.tape[index] = value;
+        }
+
+        PrefixNode toNode(List<Node> prefix, boolean tape) {
+            if (!tape) {
+                return new PrefixNode(prefix.get(0).start(), prefix.get(prefix.size() - 1).end(), prefix, this.output.toString(), new long[0], 0, 0);
+            }
+
+            int first = 0;
+            while (first < this.tape.length && this.tape[first] == 0) {
+                first++;
+            }
+            int last = this.tape.length - 1;
+            while (last >= first && this.tape[last] == 0) {
+                last--;
+            }
+
+            long[] cells = Arrays.copyOfRange(this.tape, first, last + 1);
+            int offset = cells.length == 0 ? 0 : first - this.origin;
+            return new PrefixNode(prefix.get(0).start(), prefix.get(prefix.size() - 1).end(), prefix, this.output.toString(), cells, offset, this.pointer);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BrainfuckPass} that recognizes loops that only move the pointer, such as {@code [>]}, {@code [<]} or
+ * {@code [>>>>]}, as {@link ScanNode}s.
+ */
+public class ScanPass implements BrainfuckPass {
+
+    @Override
+    public List<Node> apply(List<Node> nodes) {
+        List<Node> result = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.kind() == Kind.WHILE_START) {
+                WhileNode loop = (WhileNode) node;
+                result.add(recognize(new WhileNode(loop.start(), loop.end(), this.apply(loop.getNodes()))));
+            } else {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyzes a loop, which is recognized if its body only moves the pointer, and moves it by a non-zero amount.
+     *
+     * @param loop The loop to analyze.
+     * @return A {@link ScanNode} equivalent to the loop, or the loop itself if it was not recognized.
+     */
+    public static WhileNode recognize(WhileNode loop) {
+        int stride = 0;
+        for (Node node : loop.getNodes()) {
+            switch (node.kind()) {
+                case ADVANCE:
+                    stride++;
+                    break;
+                case RETREAT:
+                    stride--;
+                    break;
+                case MOVE:
+                    stride += ((MoveNode) node).getDelta();
+                    break;
+                default:
+                    return loop;
+            }
+        }
+
+        return stride == 0 ? loop : new ScanNode(loop.start(), loop.end(), loop.getNodes(), stride);
+    }
+
+}
@@ -0,0 +1,387 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@link ClassVisitor} that emits stack map frames itself, so that the {@link ClassWriter} it writes to need not
+ * compute them with {@link ClassWriter#COMPUTE_FRAMES}. Every method is tracked instruction by instruction with an
+ * {@link AnalyzerAdapter}, and a frame is emitted at each label, merged from the states that jump to it and the state
+ * that falls through to it. This takes a single pass, without the fixpoint analysis or the class loading of
+ * {@link ClassWriter#getCommonSuperClass(String, String)} that computing frames needs, and the maximum stack and locals
+ * come from the same tracking, so the writer need not compute anything.
+ * <p>
+ * This relies on the structure of generated code: a backwards jump must arrive with the same stack as the label it
+ * targets, and local variable slots must not be reused with different types.
+ */
+public class FrameAdapter extends ClassVisitor {
+    private String owner;
+
+    public FrameAdapter(ClassVisitor cv) {
+        super(Opcodes.ASM5, cv);
+    }
+
+    /**
+     * @return A label that is only visited to find its offset, and is never jumped to, so that no frame is emitted for it.
+     */
+    public static Label offset() {
+        return new Offset();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.owner = name;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+        return new Frames(new AnalyzerAdapter(this.owner, access, name, descriptor, mv), mv);
+    }
+
+    /**
+     * The types of the locals and stack at some point in a method, as tracked by an {@link AnalyzerAdapter}, with
+     * {@link Opcodes#TOP} following each long and double.
+     */
+    private static class State {
+        private List<Object> locals;
+        private List<Object> stack;
+
+        public State(List<Object> locals, List<Object> stack) {
+            this.locals = new ArrayList<>(locals);
+            this.stack = new ArrayList<>(stack);
+        }
+
+        public void merge(State other) {
+            this.merge(other.locals, other.stack);
+        }
+
+        public void merge(List<Object> locals, List<Object> stack) {
+            int size = Math.min(this.locals.size(), locals.size());
+            while (this.locals.size() > size) {
+                this.locals.remove(this.locals.size() - 1);
+            }
+            for (int i = 0; i < size; i++) {
+                Object a = this.locals.get(i);
+                Object b = locals.get(i);
+                if (a.equals(b) || b == Opcodes.NULL && a instanceof String) {
+                    continue;
+                } else if (a == Opcodes.NULL && b instanceof String) {
+                    this.locals.set(i, b);
+                } else {
+                    this.locals.set(i, Opcodes.TOP);
+                }
+            }
+
+            if (this.stack.size() != stack.size()) {
+                throw new IllegalStateException("Inconsistent stack height at a jump target");
+            }
+            for (int i = 0; i < this.stack.size(); i++) {
+                Object a = this.stack.get(i);
+                Object b = stack.get(i);
+                if (a.equals(b) || b == Opcodes.NULL) {
+                    continue;
+                } else if (a == Opcodes.NULL) {
+                    this.stack.set(i, b);
+                } else if (a instanceof String && b instanceof String) {
+                    this.stack.set(i, "java/lang/Object");
+                } else {
+                    throw new IllegalStateException("Inconsistent stack types at a jump target: " + a + ", " + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits a frame before the first instruction after one or more labels, from the states recorded for jumps to those
+     * labels and the state falling through to them. Jumps to labels that have already been visited are backwards jumps,
+     * whose frames have already been emitted.
+     */
+    private static class Frames extends MethodVisitor {
+        private AnalyzerAdapter analyzer;
+        private MethodVisitor writer;
+        private Map<Label, State> targets;
+        private Map<Label, Object[]> visited;
+        private Map<Label, List<Label>> handlers;
+        private Map<Label, String> exceptions;
+        private List<Label> pending;
+
+        public Frames(AnalyzerAdapter analyzer, MethodVisitor writer) {
+            super(Opcodes.ASM5, analyzer);
+            this.analyzer = analyzer;
+            this.writer = writer;
+            this.targets = new HashMap<>();
+            this.visited = new HashMap<>();
+            this.handlers = new HashMap<>();
+            this.exceptions = new HashMap<>();
+            this.pending = new ArrayList<>(2);
+        }
+
+        private void jump(Label label, List<Object> locals, List<Object> stack) {
+            if (locals == null || this.visited.containsKey(label)) {
+                return;
+            }
+            State target = this.targets.get(label);
+            if (target == null) {
+                this.targets.put(label, new State(locals, stack));
+            } else {
+                target.merge(locals, stack);
+            }
+        }
+
+        private void frame() {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+
+            State state = null;
+            for (Label label : this.pending) {
+                State target = this.targets.remove(label);
+                if (target != null) {
+                    if (state == null) {
+                        state = target;
+                    } else {
+                        state.merge(target);
+                    }
+                }
+            }
+
+            Object[] locals;
+            if (state == null) {
+                if (this.analyzer.locals == null) {
+                    throw new IllegalStateException("Unreachable code has no known frame");
+                }
+                locals = compact(this.analyzer.locals, true);
+                Object[] stack = compact(this.analyzer.stack, false);
+                this.writer.visitFrame(Opcodes.F_NEW, locals.length, locals, stack.length, stack);
+            } else {
+                if (this.analyzer.locals != null) {
+                    state.merge(this.analyzer.locals, this.analyzer.stack);
+                }
+                locals = compact(state.locals, true);
+                Object[] stack = compact(state.stack, false);
+                super.visitFrame(Opcodes.F_NEW, locals.length, locals, stack.length, stack);
+            }
+
+            for (Label label : this.pending) {
+                this.visited.put(label, locals);
+                List<Label> handlers = this.handlers.remove(label);
+                if (handlers != null) {
+                    for (Label handler : handlers) {
+                        this.handle(handler, locals);
+                    }
+                }
+            }
+            this.pending.clear();
+        }
+
+        /**
+         * @return The types, with the {@link Opcodes#TOP} following each long and double removed, as in a frame, and
+         * optionally with trailing unknown types removed.
+         */
+        private static Object[] compact(List<Object> types, boolean trim) {
+            int size = types.size();
+            while (trim && size > 0 && types.get(size - 1) == Opcodes.TOP) {
+                size--;
+            }
+            Object[] compact = new Object[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                Object type = types.get(i);
+                compact[n++] = type;
+                if (type == Opcodes.LONG || type == Opcodes.DOUBLE) {
+                    i++;
+                }
+            }
+            return n == size ? compact : Arrays.copyOf(compact, n);
+        }
+
+        private void handle(Label handler, Object[] locals) {
+            List<Object> expanded = new ArrayList<>(locals.length);
+            for (Object type : locals) {
+                expanded.add(type);
+                if (type == Opcodes.LONG || type == Opcodes.DOUBLE) {
+                    expanded.add(Opcodes.TOP);
+                }
+            }
+            String type = this.exceptions.get(handler);
+            this.jump(handler, expanded, Collections.singletonList(type == null ? "java/lang/Throwable" : type));
+        }
+
+        /**
+         * Records that a handler is reached with the locals at the start of the block it covers. Blocks may be visited
+         * either before or after the label they start at.
+         */
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            if (this.exceptions.containsKey(handler) && !Objects.equals(type, this.exceptions.get(handler))) {
+                this.exceptions.put(handler, null);
+            } else {
+                this.exceptions.put(handler, type);
+            }
+            Object[] locals = this.visited.get(start);
+            if (locals == null) {
+                this.handlers.computeIfAbsent(start, k -> new ArrayList<>()).add(handler);
+            } else {
+                this.handle(handler, locals);
+            }
+            super.visitTryCatchBlock(start, end, handler, type);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            if (!(label instanceof Offset)) {
+                this.pending.add(label);
+            }
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            this.pending.clear();
+            super.visitFrame(type, nLocal, local, nStack, stack);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            this.frame();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            this.frame();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            this.frame();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            this.frame();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            this.frame();
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            this.frame();
+            super.visitMethodInsn(opcode, owner, name, desc, itf);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            this.frame();
+            super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            this.frame();
+            if (opcode == Opcodes.GOTO) {
+                this.jump(label, this.analyzer.locals, this.analyzer.stack);
+                super.visitJumpInsn(opcode, label);
+            } else {
+                super.visitJumpInsn(opcode, label);
+                this.jump(label, this.analyzer.locals, this.analyzer.stack);
+            }
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            this.frame();
+            super.visitLdcInsn(cst);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            this.frame();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            this.frame();
+            this.switchTo(dflt, labels);
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            this.frame();
+            this.switchTo(dflt, labels);
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        private void switchTo(Label dflt, Label[] labels) {
+            if (this.analyzer.locals == null) {
+                return;
+            }
+            List<Object> stack = this.analyzer.stack.subList(0, this.analyzer.stack.size() - 1);
+            this.jump(dflt, this.analyzer.locals, stack);
+            for (Label label : labels) {
+                this.jump(label, this.analyzer.locals, stack);
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            this.frame();
+            super.visitMultiANewArrayInsn(desc, dims);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            this.pending.clear();
+            super.visitMaxs(maxStack, maxLocals);
+        }
+    }
+
+    private static class Offset extends Label {
+    }
+
+}
@@ -25,6 +25,7 @@ import com.gmail.socraticphoenix.brainjava.ast.Node;
 import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckVisitor;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
@@ -55,6 +56,7 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
 
     private Stack<Loop> loopStack;
     private ClassWriter writer;
+    private ClassVisitor visitor;
     private MethodVisitor main;
     private Label veryStart;
     private Label veryEnd;
@@ -62,6 +64,21 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
     private String name;
     private Path dir;
 
+    /**
+     * Creates a new compiler, which keeps the compiled class in memory, to be retrieved with {@link #dump()}.
+     *
+     * @param name The name of the class to compile to.
+     */
+    public SimpleJavaBytecodeCompiler(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Creates a new compiler, which also writes the compiled class to {@code dir}, if it is not null.
+     *
+     * @param name The name of the class to compile to.
+     * @param dir The directory to write the class to.
+     */
     public SimpleJavaBytecodeCompiler(String name, Path dir) {
         this.loopStack = new Stack<>();
         this.name = name;
@@ -73,9 +90,10 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
     @Override
     public void visitStart() {
         if(this.loopStack.isEmpty()) {
-            this.writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-            this.writer.visit(V1_8, ACC_PUBLIC | ACC_FINAL, this.name, null, "java/lang/Object", null);
-            MethodVisitor constr = this.writer.visitMethod(ACC_PRIVATE, "<init>", "()V", null, null);
+            this.writer = new ClassWriter(0);
+            this.visitor = new FrameAdapter(this.writer);
+            this.visitor.visit(V1_8, ACC_PUBLIC | ACC_FINAL, this.name, null, "java/lang/Object", null);
+            MethodVisitor constr = this.visitor.visitMethod(ACC_PRIVATE, "<init>", "()V", null, null);
             constr.visitCode();
             constr.visitVarInsn(ALOAD, 0);
             constr.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
@@ -83,7 +101,7 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
             constr.visitMaxs(0, 0);
             constr.visitEnd();
 
-            this.main = this.writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+            this.main = this.visitor.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
             main.visitParameter("args", ACC_FINAL);
             main.visitCode();
             main.visitLabel(veryStart);
@@ -103,7 +121,7 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
 
             //init input array
             main.visitLdcInsn(" ");
-            main.visitTypeInsn(CHECKCAST, "Ljava/lang/CharSequence;");
+            main.visitTypeInsn(CHECKCAST, "java/lang/CharSequence");
             main.visitVarInsn(ALOAD, 0);
             main.visitTypeInsn(CHECKCAST, "[Ljava/lang/CharSequence;");
             main.visitMethodInsn(INVOKESTATIC, "java/lang/String", "join", "(Ljava/lang/CharSequence;[Ljava/lang/CharSequence;)Ljava/lang/String;", false);
@@ -264,13 +282,15 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
             main.visitInsn(RETURN);
             main.visitMaxs(0, 0);
             main.visitEnd();
-            writer.visitEnd();
-
-            try {
-                Files.createDirectories(this.dir);
-                Files.write(this.dir.resolve(this.name + ".class"), writer.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            } catch (IOException e) {
-                throw new BrainfuckCompilationException("Failed to write file", e);
+            this.visitor.visitEnd();
+
+            if (this.dir != null) {
+                try {
+                    Files.createDirectories(this.dir);
+                    Files.write(this.dir.resolve(this.name + ".class"), writer.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                } catch (IOException e) {
+                    throw new BrainfuckCompilationException("Failed to write file", e);
+                }
             }
         } else {
             Loop loop = loopStack.pop();
@@ -279,6 +299,10 @@ public class SimpleJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
         }
     }
 
+    public byte[] dump() {
+        return this.writer.toByteArray();
+    }
+
     private static class Loop {
         private Label start;
         private Label end;
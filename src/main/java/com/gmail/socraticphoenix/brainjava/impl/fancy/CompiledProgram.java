@@ -0,0 +1,274 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A program compiled in memory, which can be run in the current JVM without writing class files. A program which keeps
+ * its state in an instance is loaded once, and each run uses a new instance, so runs may be concurrent. Otherwise, its
+ * state is in static fields, and each run loads the class anew.
+ * <p>
+ * Every class is defined in its own unloadable scope: where the JVM supports it, as a hidden class, renamed into this
+ * package, and otherwise through its own {@link ProgramClassLoader}. A program split into several classes is always
+ * defined through a class loader, as hidden classes cannot refer to each other by name. Once a program is
+ * {@link #close() closed} and its runs end, its classes can be unloaded.
+ */
+public class CompiledProgram implements AutoCloseable {
+    private static final String PACKAGE = CompiledProgram.class.getName().substring(0, CompiledProgram.class.getName().lastIndexOf('.') + 1).replace('.', '/');
+    private static final Method DEFINE_HIDDEN;
+    private static final Object NO_OPTIONS;
+
+    static {
+        Method define = null;
+        Object options = null;
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(option, 0);
+            define = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+        } catch (ReflectiveOperationException e) {
+            //Hidden classes need Java 15
+        }
+        DEFINE_HIDDEN = define;
+        NO_OPTIONS = options;
+    }
+
+    private String name;
+    private Map<String, byte[]> classes;
+    private boolean instance;
+    private volatile Class<?> cls;
+    private volatile boolean closed;
+
+    public CompiledProgram(String name, byte[] code) {
+        this(name, code, false);
+    }
+
+    public CompiledProgram(String name, byte[] code, boolean instance) {
+        this(name, Collections.singletonMap(name, code), instance);
+    }
+
+    /**
+     * Creates a program from its classes, as given by {@link ModelJavaBytecodeCompiler#dumpClasses()}.
+     *
+     * @param name The name of the program's own class.
+     * @param classes The class files of the program, by internal name.
+     * @param instance Whether the program keeps its state in an instance.
+     */
+    public CompiledProgram(String name, Map<String, byte[]> classes, boolean instance) {
+        this.name = name;
+        this.classes = Collections.unmodifiableMap(new LinkedHashMap<>(classes));
+        this.instance = instance;
+    }
+
+    /**
+     * Compiles a program with an array tape, binary IO and its state in an instance, so that it can be run with caller
+     * supplied streams, any number of times.
+     *
+     * @param name The name of the class the program will be compiled to.
+     * @param program The source of the program.
+     * @param cell The model of the individual cells.
+     * @param eof The value read once input is exhausted.
+     * @param passes The passes to apply to the program.
+     * @return The compiled program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static CompiledProgram compile(String name, String program, CellModel cell, int eof, BrainfuckPassManager passes) throws BrainfuckCompilationException {
+        TapeModel model = Models.arrayTape(name, cell, Models.binaryIO(eof));
+        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(model, name, true, true);
+        BrainfuckCompiler.compile(program, compiler, passes);
+        return new CompiledProgram(name, compiler.dumpClasses(), true);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The class file of the program's own class.
+     */
+    public byte[] getCode() {
+        return this.classes.get(this.name);
+    }
+
+    /**
+     * @return The class files of the program, by internal name, starting with its own class.
+     */
+    public Map<String, byte[]> getClasses() {
+        return this.classes;
+    }
+
+    /**
+     * @return The total size of the program's class files.
+     */
+    public long getSize() {
+        long size = 0;
+        for (byte[] code : this.classes.values()) {
+            size += code.length;
+        }
+        return size;
+    }
+
+    public boolean isInstance() {
+        return this.instance;
+    }
+
+    /**
+     * @return Whether programs are defined as hidden classes, rather than through their own class loaders.
+     */
+    public static boolean hiddenClasses() {
+        return DEFINE_HIDDEN != null;
+    }
+
+    /**
+     * @return The program's class. If the program keeps its state in an instance, this is the same class each time,
+     * and otherwise a class newly defined and initialized in its own scope.
+     */
+    public Class<?> load() {
+        if (this.closed) {
+            throw new IllegalStateException(this.name + " is closed");
+        }
+        if (this.instance) {
+            Class<?> cls = this.cls;
+            if (cls == null) {
+                synchronized (this) {
+                    if (this.closed) {
+                        throw new IllegalStateException(this.name + " is closed");
+                    } else if (this.cls == null) {
+                        this.cls = this.define();
+                    }
+                    cls = this.cls;
+                }
+            }
+            return cls;
+        }
+        return this.define();
+    }
+
+    private Class<?> define() {
+        if (DEFINE_HIDDEN != null && this.classes.size() == 1) {
+            try {
+                return ((MethodHandles.Lookup) DEFINE_HIDDEN.invoke(MethodHandles.lookup(), this.hidden(), true, NO_OPTIONS)).lookupClass();
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Failed to load " + this.name, e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to load " + this.name, e);
+            }
+        }
+
+        try {
+            return Class.forName(this.name.replace('/', '.'), true, new ProgramClassLoader(CompiledProgram.class.getClassLoader(), this.classes));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to load " + this.name, e);
+        }
+    }
+
+    /**
+     * @return The program's code, renamed into this package, as a hidden class defined through this class's lookup must
+     * be.
+     */
+    private byte[] hidden() {
+        String renamed = PACKAGE + this.name.substring(this.name.lastIndexOf('/') + 1);
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(this.getCode()).accept(new ClassRemapper(writer, new SimpleRemapper(this.name, renamed)), 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Releases the program's class, so that it can be unloaded once any runs in progress end. The program can no longer
+     * be run.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.cls = null;
+        }
+    }
+
+    /**
+     * Runs the program, reading input from {@code in} and writing output to {@code out}. The streams must be those
+     * supported by the model the program was compiled with, such as {@link #compile(String, String, CellModel, int,
+     * BrainfuckPassManager)}'s binary IO.
+     *
+     * @param in The stream to read input from.
+     * @param out The stream to write output to, which is flushed once the program ends.
+     * @throws IOException If the output fails to flush.
+     */
+    public void run(InputStream in, OutputStream out) throws IOException {
+        Class<?> cls = this.load();
+        try {
+            Object program = this.instance ? cls.getConstructor().newInstance() : null;
+            cls.getField("in").set(program, in);
+            cls.getField("out").set(program, out);
+            cls.getMethod(this.instance ? "run" : "main", String[].class).invoke(program, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Failed to run " + this.name, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to run " + this.name, e);
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs the program on the given input.
+     *
+     * @param input The bytes of input.
+     * @return The bytes of output.
+     */
+    public byte[] run(byte[] input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            this.run(new ByteArrayInputStream(input), out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to run " + this.name, e);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import com.gmail.socraticphoenix.brainjava.impl.FrameAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ClassVisitor} which moves the state of a compiled program from static fields into an instance, so that one
+ * class can run any number of times, concurrently. The program's static fields become instance fields, and each of its
+ * static methods takes the instance as an extra, last argument, through which those fields are accessed. That argument
+ * is declared as an {@link Object}, and cast once on entry, so that no descriptor names the class, which could then not
+ * be {@link CompiledProgram defined} as a hidden class. The static
+ * initializer becomes {@code initialize(instance)}, called by the constructor, and {@code main} becomes
+ * {@code execute(args, instance)}, called by {@code run(args)}. A new {@code main} runs a new instance.
+ * <p>
+ * The spill classes of a program, named {@code program$1} and so on, are transformed the same way, except that the
+ * instance is always of the program's own class, which alone has fields and an entry point.
+ */
+public class InstanceTransformer extends ClassVisitor implements Opcodes {
+    private static final Type OBJECT = Type.getType(Object.class);
+
+    private String owner;
+    private String program;
+
+    public InstanceTransformer(ClassVisitor cv) {
+        this(cv, null);
+    }
+
+    /**
+     * Creates a new transformer for one of the classes of a program.
+     *
+     * @param cv The visitor to pass the transformed class to.
+     * @param program The name of the program's own class, or null if it is the transformed class.
+     */
+    public InstanceTransformer(ClassVisitor cv, String program) {
+        super(ASM5, cv);
+        this.program = program;
+    }
+
+    /**
+     * Transforms a compiled program.
+     *
+     * @param code The class file of a program, with its state in static fields.
+     * @return The class file of the program, with its state in an instance.
+     */
+    public static byte[] transform(byte[] code) {
+        return transform(code, null);
+    }
+
+    /**
+     * Transforms one of the classes of a compiled program.
+     *
+     * @param code The class file, with the program's state in static fields.
+     * @param program The name of the program's own class, or null if it is this class.
+     * @return The class file, with the program's state in an instance.
+     */
+    public static byte[] transform(byte[] code, String program) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(code).accept(new InstanceTransformer(new FrameAdapter(writer), program), ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.owner = name;
+        if (this.program == null) {
+            this.program = name;
+        }
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        if ((access & ACC_STATIC) != 0) {
+            return super.visitField(access & ~ACC_STATIC, name, descriptor, signature, null);
+        }
+        return super.visitField(access, name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        if (name.equals("<init>")) {
+            return new MethodVisitor(ASM5, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                @Override
+                public void visitInsn(int opcode) {
+                    if (opcode == RETURN) {
+                        super.visitVarInsn(ALOAD, 0);
+                        super.visitMethodInsn(INVOKESTATIC, InstanceTransformer.this.owner, "initialize", InstanceTransformer.this.withSelf("()V"), false);
+                    }
+                    super.visitInsn(opcode);
+                }
+            };
+        } else if ((access & ACC_STATIC) == 0) {
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
+
+        int slot = (Type.getArgumentsAndReturnSizes(descriptor) >> 2) - 1;
+        if (name.equals("<clinit>")) {
+            name = "initialize";
+            access = ACC_PRIVATE | ACC_STATIC;
+        } else if (name.equals("main")) {
+            name = "execute";
+            access = ACC_PRIVATE | ACC_STATIC;
+        }
+        return new Adapter(super.visitMethod(access, name, this.withSelf(descriptor), null, exceptions), slot);
+    }
+
+    @Override
+    public void visitEnd() {
+        if (!this.owner.equals(this.program)) {
+            super.visitEnd();
+            return;
+        }
+
+        MethodVisitor run = super.visitMethod(ACC_PUBLIC, "run", "([Ljava/lang/String;)V", null, null);
+        run.visitCode();
+        run.visitVarInsn(ALOAD, 1);
+        run.visitVarInsn(ALOAD, 0);
+        run.visitMethodInsn(INVOKESTATIC, this.owner, "execute", this.withSelf("([Ljava/lang/String;)V"), false);
+        run.visitInsn(RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        MethodVisitor main = super.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        main.visitCode();
+        main.visitTypeInsn(NEW, this.owner);
+        main.visitInsn(DUP);
+        main.visitMethodInsn(INVOKESPECIAL, this.owner, "<init>", "()V", false);
+        main.visitVarInsn(ALOAD, 0);
+        main.visitMethodInsn(INVOKEVIRTUAL, this.owner, "run", "([Ljava/lang/String;)V", false);
+        main.visitInsn(RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+
+        super.visitEnd();
+    }
+
+    /**
+     * @return Whether {@code cls} is the program's own class, or one of its spill classes.
+     */
+    private boolean isProgram(String cls) {
+        return cls.equals(this.program) || cls.startsWith(this.program + "$");
+    }
+
+    private String withSelf(String descriptor) {
+        Type[] args = Type.getArgumentTypes(descriptor);
+        args = Arrays.copyOf(args, args.length + 1);
+        args[args.length - 1] = OBJECT;
+        return Type.getMethodDescriptor(Type.getReturnType(descriptor), args);
+    }
+
+    /**
+     * Rewrites a method which takes the instance in the local {@code slot}, after its other arguments. Locals from that
+     * slot on are moved up by one.
+     */
+    private class Adapter extends MethodVisitor {
+        private int slot;
+
+        public Adapter(MethodVisitor mv, int slot) {
+            super(ASM5, mv);
+            this.slot = slot;
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            super.visitVarInsn(ALOAD, this.slot);
+            super.visitTypeInsn(CHECKCAST, InstanceTransformer.this.program);
+            super.visitVarInsn(ASTORE, this.slot);
+        }
+
+        private int remap(int var) {
+            return var >= this.slot ? var + 1 : var;
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            super.visitVarInsn(opcode, this.remap(var));
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            super.visitIincInsn(this.remap(var), increment);
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+            super.visitLocalVariable(name, descriptor, signature, start, end, this.remap(index));
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            if (InstanceTransformer.this.isProgram(owner) && opcode == GETSTATIC) {
+                super.visitVarInsn(ALOAD, this.slot);
+                super.visitFieldInsn(GETFIELD, owner, name, descriptor);
+            } else if (InstanceTransformer.this.isProgram(owner) && opcode == PUTSTATIC) {
+                super.visitVarInsn(ALOAD, this.slot);
+                if (Type.getType(descriptor).getSize() == 2) {
+                    super.visitInsn(DUP_X2);
+                    super.visitInsn(POP);
+                } else {
+                    super.visitInsn(SWAP);
+                }
+                super.visitFieldInsn(PUTFIELD, owner, name, descriptor);
+            } else {
+                super.visitFieldInsn(opcode, owner, name, descriptor);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            if (InstanceTransformer.this.isProgram(owner) && opcode == INVOKESTATIC) {
+                super.visitVarInsn(ALOAD, this.slot);
+                super.visitMethodInsn(opcode, owner, name, InstanceTransformer.this.withSelf(descriptor), isInterface);
+            } else {
+                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            }
+        }
+
+    }
+
+}
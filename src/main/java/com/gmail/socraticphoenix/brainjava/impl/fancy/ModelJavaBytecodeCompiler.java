@@ -21,12 +21,22 @@
  */
 package com.gmail.socraticphoenix.brainjava.impl.fancy;
 
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
 import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
 import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckVisitor;
+import com.gmail.socraticphoenix.brainjava.impl.FrameAdapter;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -34,24 +44,113 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
 
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
 
 /**
  * A powerful {@link BrainfuckVisitor} that uses a {@link TapeModel} to define its behavior.
  */
 public class ModelJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
+    /**
+     * The most codepoints written by a single constant; at up to 6 bytes per surrogate pair, this stays well within the
+     * 65535 byte limit of a string constant.
+     */
+    private static final int OUTPUT_CHUNK = 8192;
+
+    /**
+     * The size, in bytes of bytecode, after which the rest of a sequence of nodes is moved into a new method. This keeps
+     * every method well within the 64KB limit, and below the 8000 bytes past which HotSpot will not JIT-compile a method.
+     */
+    public static final int PARTITION_SIZE = 4000;
+
+    /**
+     * The most partitions called from one method; past this, the rest of the sequence continues in a nested partition, so
+     * that the calls themselves never fill up a method.
+     */
+    public static final int PARTITION_CALLS = 64;
+
+    /**
+     * The most non-zero cells of a {@link PrefixNode}'s tape set in one piece, between which the rest of the tape may be
+     * moved into a new partition.
+     */
+    public static final int PRESET_CHUNK = 32;
+
+    /**
+     * The most methods generated into one class, after which new methods go into a new class. With methods of around
+     * {@link #PARTITION_SIZE} bytes, this keeps each class to a couple of megabytes.
+     */
+    public static final int CLASS_METHODS = 512;
+
+    /**
+     * The size of the constant pool of a class past which new methods go into a new class, leaving room within its limit of
+     * 65535 entries for the constants of methods which are still being generated in it.
+     */
+    public static final int CLASS_CONSTANTS = 48000;
+
     private int loopIndex = 0;
+    private int partIndex = 0;
     private TapeModel model;
     private String name;
-    private ClassWriter writer;
+    private ProgramClasses classes;
+    private ClassVisitor visitor;
     private GeneratorAdapter main;
+    private Partitions partitions;
+    private boolean inline;
+    private boolean instance;
+    private Stack<Loop> loops;
 
     public ModelJavaBytecodeCompiler(TapeModel model, String name) {
+        this(model, name, false);
+    }
+
+    /**
+     * Creates a new compiler. If {@code inline} is true, loops are compiled as jumps within the main method, rather than
+     * as separate methods, which lets the {@link TapeModel#localize(GeneratorAdapter) tape} keep its state in locals, if it
+     * supports it. Otherwise, and whenever loops are compiled as methods, the state stays in fields.
+     *
+     * @param model The model of the tape.
+     * @param name The name of the class to compile to.
+     * @param inline Whether to compile loops inline.
+     */
+    public ModelJavaBytecodeCompiler(TapeModel model, String name, boolean inline) {
+        this(model, name, inline, false);
+    }
+
+    /**
+     * Creates a new compiler. If {@code instance} is true, the program keeps its state in an instance, rather than in
+     * static fields, as described by {@link InstanceTransformer}.
+     *
+     * @param model The model of the tape.
+     * @param name The name of the class to compile to.
+     * @param inline Whether to compile loops inline.
+     * @param instance Whether to keep the program's state in an instance.
+     */
+    public ModelJavaBytecodeCompiler(TapeModel model, String name, boolean inline, boolean instance) {
+        this(model, name, inline, instance, false);
+    }
+
+    /**
+     * Creates a new compiler. Stack map frames are normally emitted by a {@link FrameAdapter}; if {@code computeFrames} is
+     * true, they are instead computed by ASM, which is slower, but makes no assumptions about the generated code.
+     *
+     * @param model The model of the tape.
+     * @param name The name of the class to compile to.
+     * @param inline Whether to compile loops inline.
+     * @param instance Whether to keep the program's state in an instance.
+     * @param computeFrames Whether to have ASM compute frames.
+     */
+    public ModelJavaBytecodeCompiler(TapeModel model, String name, boolean inline, boolean instance, boolean computeFrames) {
         this.model = model;
         this.name = name;
-        this.writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        this.writer.visit(V1_8, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        this.inline = inline;
+        this.instance = instance;
+        this.loops = new Stack<>();
+        this.classes = new ProgramClasses(name, computeFrames);
+        this.visitor = this.classes.main();
 
-        MethodVisitor mv = this.writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        MethodVisitor mv = this.visitor.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
         mv.visitCode();
         mv.visitVarInsn(ALOAD, 0);
         mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
@@ -59,12 +158,17 @@ public class ModelJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
         mv.visitMaxs(0, 0);
         mv.visitEnd();
 
-        model.initial(this.writer);
-        MethodVisitor main = this.writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
-        GeneratorAdapter adapter = new GeneratorAdapter(main, ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V");
+        model.initial(this.visitor);
+        Method entry = model.entry();
+        MethodVisitor main = this.visitor.visitMethod(ACC_PUBLIC | ACC_STATIC, entry.getName(), entry.getDescriptor(), null, null);
+        GeneratorAdapter adapter = new GeneratorAdapter(main, ACC_PUBLIC | ACC_STATIC, entry.getName(), entry.getDescriptor());
         adapter.visitCode();
         this.main = adapter;
         this.model.initialMethod(this.main);
+        if (inline) {
+            this.model.localize(this.main);
+        }
+        this.partitions = new Partitions(this, this.main);
     }
 
     public int nextLoopIndex() {
@@ -72,25 +176,93 @@ public class ModelJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
         return this.loopIndex;
     }
 
+    public int nextPartIndex() {
+        this.partIndex++;
+        return this.partIndex;
+    }
+
     @Override
-    public void visitStart() throws BrainfuckCompilationException {
+    public void visitAll(List<Node> nodes) throws BrainfuckCompilationException {
+        for (Node node : nodes) {
+            this.main = this.partitions.next();
+            this.visitNode(node);
+        }
+    }
 
+    /**
+     * Generates a call to a new partition method in {@code caller}, and starts generating that method.
+     *
+     * @param caller The method to call the partition from.
+     * @return The partition method.
+     */
+    GeneratorAdapter beginPartition(GeneratorAdapter caller) {
+        Method method = this.model.partition("part" + this.nextPartIndex());
+        String owner = this.classes.reserve(method.getName());
+        this.model.invokePartition(caller, Type.getObjectType(owner), method);
+
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, method, null, null, this.classes.visitor());
+        gen.visitCode();
+        this.model.beginPartition(gen);
+        return gen;
     }
 
-    @Override
-    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
-        int n = nextLoopIndex();
-        this.main.invokeStatic(Type.getObjectType(this.name), new Method("loop" + n, Type.VOID_TYPE, new Type[0]));
+    void endPartition(GeneratorAdapter gen) {
+        this.model.endPartition(gen);
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
 
-        MethodVisitor nLoop = this.writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n, "()V", null, null);
+    /**
+     * Generates a call to a new loop method in {@code caller}, and starts generating that method, and the method for the
+     * loop's body, which it calls.
+     *
+     * @param caller The method to call the loop from.
+     * @return The visitor of the loop.
+     */
+    WhileLoopVisitor beginLoop(GeneratorAdapter caller) {
+        int n = this.nextLoopIndex();
+        String owner = this.classes.reserve("loop" + n);
+        caller.invokeStatic(Type.getObjectType(owner), new Method("loop" + n, Type.VOID_TYPE, new Type[0]));
+
+        MethodVisitor nLoop = this.classes.visitor().visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n, "()V", null, null);
         GeneratorAdapter nLoopAd = new GeneratorAdapter(nLoop, ACC_PUBLIC | ACC_STATIC, "loop" + n, "()V");
 
-        MethodVisitor nBody = this.writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n + "$body", "()V", null, null);
+        MethodVisitor nBody = this.classes.visitor().visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n + "$body", "()V", null, null);
         GeneratorAdapter nBodyAd = new GeneratorAdapter(nBody, ACC_PUBLIC | ACC_STATIC, "loop" + n + "$body", "()V");
         nLoopAd.visitCode();
         nBodyAd.visitCode();
 
-        return new WhileLoopVisitor(this, this.model, this.name, this.writer, nBodyAd, nLoopAd, n);
+        return new WhileLoopVisitor(this, this.model, owner, nBodyAd, nLoopAd, n);
+    }
+
+    /**
+     * @return The number of bytes of bytecode generated in {@code gen} so far.
+     */
+    static int size(GeneratorAdapter gen) {
+        Label here = FrameAdapter.offset();
+        gen.mark(here);
+        return here.getOffset();
+    }
+
+    @Override
+    public void visitStart() throws BrainfuckCompilationException {
+        if (!this.loops.isEmpty()) {
+            Loop loop = this.loops.peek();
+            this.main.mark(loop.start);
+            this.model.get(this.main);
+            this.model.cell().isZero(this.main, loop.end);
+            this.partitions.pin();
+        }
+    }
+
+    @Override
+    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
+        this.main = this.partitions.next();
+        if (this.inline) {
+            this.loops.push(new Loop(this.main.newLabel(), this.main.newLabel()));
+            return this;
+        }
+        return this.beginLoop(this.main);
     }
 
     @Override
@@ -123,18 +295,176 @@ public class ModelJavaBytecodeCompiler implements BrainfuckVisitor, Opcodes {
         this.model.output(this.main);
     }
 
+    @Override
+    public void visitAdd(AddNode node) throws BrainfuckCompilationException {
+        this.model.add(this.main, node.getDelta());
+    }
+
+    @Override
+    public void visitMove(MoveNode node) throws BrainfuckCompilationException {
+        this.model.move(this.main, node.getDelta());
+    }
+
+    @Override
+    public void visitSetZero(SetZeroNode node) throws BrainfuckCompilationException {
+        if (this.model.cell().wraps()) {
+            this.model.setZero(this.main);
+        } else {
+            BrainfuckVisitor.super.visitSetZero(node);
+        }
+    }
+
+    @Override
+    public void visitMulAdd(MulAddNode node) throws BrainfuckCompilationException {
+        if (this.model.cell().wraps()) {
+            this.model.mulAdd(this.main, node.getOffsets(), node.getFactors());
+        } else {
+            BrainfuckVisitor.super.visitMulAdd(node);
+        }
+    }
+
+    @Override
+    public void visitScan(ScanNode node) throws BrainfuckCompilationException {
+        this.model.scan(this.main, node.getStride());
+    }
+
+    @Override
+    public void visitBlock(BlockNode node) throws BrainfuckCompilationException {
+        if (canAddress(this.model, node)) {
+            visitBlock(this.model, this.main, node);
+        } else {
+            BrainfuckVisitor.super.visitBlock(node);
+        }
+    }
+
+    @Override
+    public void visitPrefix(PrefixNode node) throws BrainfuckCompilationException {
+        String output = node.getOutput();
+        int index = 0;
+        while (index < output.length()) {
+            int next = output.offsetByCodePoints(index, Math.min(OUTPUT_CHUNK, output.codePointCount(index, output.length())));
+            this.main = this.partitions.next();
+            this.model.input().output(this.main, output.substring(index, next));
+            index = next;
+        }
+
+        //the tape is set a chunk at a time, each in the next partition, so that no one method holds the whole snapshot
+        long[] cells = node.getCells();
+        int start = 0;
+        while (start < cells.length) {
+            int end = start;
+            int set = 0;
+            while (end < cells.length && set < PRESET_CHUNK) {
+                if (cells[end] != 0) {
+                    set++;
+                }
+                end++;
+            }
+            this.main = this.partitions.next();
+            this.model.preset(this.main, Arrays.copyOfRange(cells, start, end), node.getOffset() + start, 0);
+            start = end;
+        }
+        this.main = this.partitions.next();
+        this.model.move(this.main, node.getPointer());
+    }
+
     @Override
     public void visitEnd() throws BrainfuckCompilationException {
+        if (!this.loops.isEmpty()) {
+            Loop loop = this.loops.pop();
+            this.main = this.partitions.unpin();
+            this.main.goTo(loop.start);
+            this.main.mark(loop.end);
+            return;
+        }
+
+        this.main = this.partitions.finish();
         this.model.end(this.main);
         this.main.returnValue();
         this.main.visitMaxs(0, 0);
         this.main.visitEnd();
 
-        this.writer.visitEnd();
+        this.classes.end();
     }
 
+    /**
+     * @return The class file of the program.
+     * @throws IllegalStateException If the program was too large for one class, and was split into several, which are
+     * given by {@link #dumpClasses()}.
+     */
     public byte[] dump() {
-        return this.writer.toByteArray();
+        if (this.classes.size() > 1) {
+            throw new IllegalStateException(this.name + " is split into " + this.classes.size() + " classes");
+        }
+        return this.dumpClasses().get(this.name);
+    }
+
+    /**
+     * @return The class files of the program, by internal name, starting with its own class, and followed by any spill
+     * classes it was split into, as it was too large for one class.
+     */
+    public Map<String, byte[]> dumpClasses() {
+        Map<String, byte[]> classes = this.classes.dump();
+        if (this.instance) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                entry.setValue(InstanceTransformer.transform(entry.getValue(), this.name));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return Whether {@code node} can be compiled with the operations at an offset from the pointer of {@code model}.
+     * Recognized loops in the block need a wrapping cell, and are otherwise compiled as regular loops, which the block
+     * operations cannot contain.
+     */
+    static boolean canAddress(TapeModel model, BlockNode node) {
+        if (!model.addressable()) {
+            return false;
+        }
+        for (Node op : node.getNodes()) {
+            if ((op.kind() == Kind.SET_ZERO || op.kind() == Kind.MUL_ADD) && !model.cell().wraps()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void visitBlock(TapeModel model, GeneratorAdapter gen, BlockNode node) {
+        model.enter(gen, node.getMin(), node.getMax());
+        for (int i = 0; i < node.getOffsets().length; i++) {
+            Node op = node.getNodes().get(i);
+            int offset = node.getOffsets()[i];
+            switch (op.kind()) {
+                case ADD:
+                    model.add(gen, ((AddNode) op).getDelta(), offset);
+                    break;
+                case INPUT:
+                    model.input(gen, offset);
+                    break;
+                case OUTPUT:
+                    model.output(gen, offset);
+                    break;
+                case SET_ZERO:
+                    model.setZero(gen, offset);
+                    break;
+                case MUL_ADD:
+                    MulAddNode mulAdd = (MulAddNode) op;
+                    model.mulAdd(gen, offset, mulAdd.getOffsets(), mulAdd.getFactors());
+                    break;
+            }
+        }
+        model.exit(gen, node.getShift());
+    }
+
+    private static class Loop {
+        private Label start;
+        private Label end;
+
+        public Loop(Label start, Label end) {
+            this.start = start;
+            this.end = end;
+        }
     }
 
 }
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.util.Stack;
+
+/**
+ * The chain of partition methods that a sequence of nodes is generated into. Nodes go into a base method until it
+ * reaches {@link ModelJavaBytecodeCompiler#PARTITION_SIZE}, and then into partitions called from it, each filled in
+ * turn. After {@link ModelJavaBytecodeCompiler#PARTITION_CALLS} partitions, the next one takes the place of the base
+ * method, so that the calls never fill up a method. Partitions stay open until they fill up, or are closed, so a
+ * sequence may arrive in any number of pieces.
+ * <p>
+ * A method can be {@link #pin() pinned}, while it contains the start of a loop whose end has yet to be generated; it
+ * then stays open, and partitions are called from it once it fills up.
+ */
+class Partitions {
+    private ModelJavaBytecodeCompiler compiler;
+    private Stack<Partition> open;
+    private Stack<Integer> pins;
+
+    public Partitions(ModelJavaBytecodeCompiler compiler, GeneratorAdapter base) {
+        this.compiler = compiler;
+        this.open = new Stack<>();
+        this.open.push(new Partition(base, false));
+        this.pins = new Stack<>();
+    }
+
+    /**
+     * @return The method to generate the next node into, which begins a new partition if the current method is full.
+     */
+    public GeneratorAdapter next() {
+        Partition top = this.open.peek();
+        if (ModelJavaBytecodeCompiler.size(top.gen) <= ModelJavaBytecodeCompiler.PARTITION_SIZE) {
+            return top.gen;
+        }
+
+        if (top.leaf && this.open.size() > (this.pins.isEmpty() ? 1 : this.pins.peek())) {
+            this.compiler.endPartition(top.gen);
+            this.open.pop();
+            top = this.open.peek();
+        }
+        Partition partition = new Partition(this.compiler.beginPartition(top.gen), top.calls < ModelJavaBytecodeCompiler.PARTITION_CALLS);
+        top.calls++;
+        this.open.push(partition);
+        return partition.gen;
+    }
+
+    /**
+     * @return The method nodes are currently generated into.
+     */
+    public GeneratorAdapter current() {
+        return this.open.peek().gen;
+    }
+
+    /**
+     * Pins the current method, until a matching {@link #unpin()}.
+     */
+    public void pin() {
+        this.pins.push(this.open.size());
+    }
+
+    /**
+     * Ends the partitions begun since the matching {@link #pin()}, and unpins the method pinned by it.
+     *
+     * @return The method that was pinned.
+     */
+    public GeneratorAdapter unpin() {
+        return this.close(this.pins.pop());
+    }
+
+    /**
+     * Ends every partition, so that the end of the sequence can be generated in the base method.
+     *
+     * @return The base method.
+     */
+    public GeneratorAdapter finish() {
+        return this.close(1);
+    }
+
+    private GeneratorAdapter close(int depth) {
+        while (this.open.size() > depth) {
+            this.compiler.endPartition(this.open.pop().gen);
+        }
+        return this.open.peek().gen;
+    }
+
+    private static class Partition {
+        private GeneratorAdapter gen;
+        private boolean leaf;
+        private int calls;
+
+        public Partition(GeneratorAdapter gen, boolean leaf) {
+            this.gen = gen;
+            this.leaf = leaf;
+        }
+    }
+
+}
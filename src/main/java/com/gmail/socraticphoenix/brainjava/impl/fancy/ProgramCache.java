@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of {@link CompiledProgram compiled programs}, keyed by a hash of their source and everything else which
+ * affects their code. Loaded programs are held in memory, and evicted least recently used first, once there are more
+ * than a maximum number of them, or their classes take more than a maximum number of bytes. Evicted programs are not
+ * closed, as they may still be in use, and their classes are unloaded once they are no longer referenced. Optionally,
+ * class files are also kept in a directory, from which programs are loaded when they are not in memory.
+ */
+public class ProgramCache {
+    /**
+     * Part of every key, to be changed whenever the code compiled for the same source and configuration changes, so that
+     * class files kept on disk by older versions are not used.
+     */
+    private static final String FORMAT = "2";
+
+    private int maxPrograms;
+    private long maxBytes;
+    private Path dir;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private LinkedHashMap<String, CompiledProgram> programs;
+
+    public ProgramCache(int maxPrograms, long maxBytes) {
+        this(maxPrograms, maxBytes, null);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxPrograms The most programs held in memory.
+     * @param maxBytes The most bytes of class files held in memory.
+     * @param dir The directory to keep class files in, or null to keep them only in memory.
+     */
+    public ProgramCache(int maxPrograms, long maxBytes, Path dir) {
+        this.maxPrograms = maxPrograms;
+        this.maxBytes = maxBytes;
+        this.dir = dir;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets a program, compiling it with {@link CompiledProgram#compile}, if it is not cached.
+     *
+     * @param program The source of the program.
+     * @param lcbound The lower bound of the cells.
+     * @param ucbound The upper bound of the cells.
+     * @param eof The value read once input is exhausted.
+     * @param optimize The {@link BrainJava#passes(int, long, long, long) optimization level}.
+     * @param prefix The budget of instructions evaluated at compile time.
+     * @return The compiled program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public CompiledProgram get(String program, long lcbound, long ucbound, int eof, int optimize, long prefix) throws BrainfuckCompilationException {
+        String key = key(program, "io=binary", "tape=array", "state=instance", "lcbound=" + lcbound, "ucbound=" + ucbound, "eof=" + eof, "optimize=" + optimize, "prefix=" + prefix);
+        synchronized (this) {
+            CompiledProgram cached = this.programs.get(key);
+            if (cached != null) {
+                this.hits++;
+                return cached;
+            }
+            this.misses++;
+        }
+
+        String name = "P" + key;
+        CompiledProgram compiled = this.read(name, key);
+        if (compiled == null) {
+            compiled = CompiledProgram.compile(name, program, Models.boundedCell(lcbound, ucbound), eof, BrainJava.passes(optimize, lcbound, ucbound, prefix));
+            this.write(name, key, compiled.getClasses());
+        }
+
+        synchronized (this) {
+            CompiledProgram raced = this.programs.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            this.programs.put(key, compiled);
+            this.bytes += compiled.getSize();
+            this.evict();
+        }
+        return compiled;
+    }
+
+    private void evict() {
+        Iterator<CompiledProgram> iterator = this.programs.values().iterator();
+        while (this.programs.size() > 1 && (this.programs.size() > this.maxPrograms || this.bytes > this.maxBytes)) {
+            this.bytes -= iterator.next().getSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Reads a program's own class file, {@code key.class}, and any spill classes, {@code key$1.class} and so on, up to
+     * the first which is missing.
+     */
+    private CompiledProgram read(String name, String key) {
+        if (this.dir != null) {
+            Path file = this.dir.resolve(key + ".class");
+            if (Files.isRegularFile(file)) {
+                try {
+                    Map<String, byte[]> classes = new LinkedHashMap<>();
+                    classes.put(name, Files.readAllBytes(file));
+                    for (int i = 1; Files.isRegularFile(this.dir.resolve(key + "$" + i + ".class")); i++) {
+                        classes.put(name + "$" + i, Files.readAllBytes(this.dir.resolve(key + "$" + i + ".class")));
+                    }
+                    return new CompiledProgram(name, classes, true);
+                } catch (IOException ignore) {
+                    //Compile it again instead
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a program's classes, its own last, so that its spill classes are all in place once it can be read.
+     */
+    private void write(String name, String key, Map<String, byte[]> classes) {
+        if (this.dir != null) {
+            try {
+                Files.createDirectories(this.dir);
+                List<String> names = new ArrayList<>(classes.keySet());
+                Collections.reverse(names);
+                for (String cls : names) {
+                    String file = key + cls.substring(name.length());
+                    Path temp = Files.createTempFile(this.dir, key, ".tmp");
+                    Files.write(temp, classes.get(cls));
+                    Files.move(temp, this.dir.resolve(file + ".class"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException ignore) {
+                //The program is still cached in memory
+            }
+        }
+    }
+
+    /**
+     * Removes every program from memory. Class files kept on disk are left as they are.
+     */
+    public synchronized void clear() {
+        this.programs.clear();
+        this.bytes = 0;
+    }
+
+    public synchronized int size() {
+        return this.programs.size();
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return The hex SHA-256 hash of the configuration and source of a program.
+     */
+    private static String key(String program, String... config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("format=" + FORMAT + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String entry : config) {
+                digest.update((entry + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(program.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link ClassLoader} which defines the classes of a single compiled program from their bytes, and delegates
+ * everything else to its parent.
+ */
+public class ProgramClassLoader extends ClassLoader {
+    private Map<String, byte[]> classes;
+
+    public ProgramClassLoader(ClassLoader parent, String name, byte[] code) {
+        this(parent, Collections.singletonMap(name, code));
+    }
+
+    /**
+     * Creates a new class loader.
+     *
+     * @param parent The class loader to delegate to.
+     * @param classes The class files of the program, by internal name.
+     */
+    public ProgramClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+        super(parent);
+        this.classes = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            this.classes.put(entry.getKey().replace('/', '.'), entry.getValue());
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] code = this.classes.get(name);
+        if (code != null) {
+            return this.defineClass(name, code, 0, code.length);
+        }
+        return super.findClass(name);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import com.gmail.socraticphoenix.brainjava.impl.FrameAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The classes that a program is generated into. Methods go into the program's own class until it nears the limits of a
+ * class file, after {@link ModelJavaBytecodeCompiler#CLASS_METHODS} methods or
+ * {@link ModelJavaBytecodeCompiler#CLASS_CONSTANTS} constants, and then into spill classes, named {@code name$1},
+ * {@code name$2} and so on, each filled in turn. Methods stay in the class they were begun in, and the program's state
+ * stays in the fields of its own class, which its spill classes access.
+ */
+class ProgramClasses implements Opcodes {
+    private String name;
+    private boolean computeFrames;
+    private Map<String, ClassWriter> writers;
+    private Map<String, ClassVisitor> visitors;
+    private String current;
+    private int methods;
+
+    public ProgramClasses(String name, boolean computeFrames) {
+        this.name = name;
+        this.computeFrames = computeFrames;
+        this.writers = new LinkedHashMap<>();
+        this.visitors = new LinkedHashMap<>();
+        this.begin(name);
+    }
+
+    private void begin(String name) {
+        ClassWriter writer = new ClassWriter(this.computeFrames ? ClassWriter.COMPUTE_FRAMES : 0);
+        ClassVisitor visitor = this.computeFrames ? writer : new FrameAdapter(writer);
+        visitor.visit(V1_8, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        this.writers.put(name, writer);
+        this.visitors.put(name, visitor);
+        this.current = name;
+        this.methods = 0;
+    }
+
+    /**
+     * @return The program's own class.
+     */
+    public ClassVisitor main() {
+        return this.visitors.get(this.name);
+    }
+
+    /**
+     * Makes room for a new method, beginning a new spill class if the current class is full.
+     *
+     * @param method The name of the method, which must not be used in any class yet.
+     * @return The name of the class to generate the method in.
+     */
+    public String reserve(String method) {
+        //the index of a new constant is the size of the constant pool so far
+        if (this.methods >= ModelJavaBytecodeCompiler.CLASS_METHODS || this.writers.get(this.current).newUTF8(method) > ModelJavaBytecodeCompiler.CLASS_CONSTANTS) {
+            this.begin(this.name + "$" + this.writers.size());
+        }
+        this.methods++;
+        return this.current;
+    }
+
+    /**
+     * @return The class that the last {@link #reserve(String) reserved} method goes into.
+     */
+    public ClassVisitor visitor() {
+        return this.visitors.get(this.current);
+    }
+
+    /**
+     * @return The number of classes, including the program's own.
+     */
+    public int size() {
+        return this.writers.size();
+    }
+
+    /**
+     * Ends every class.
+     */
+    public void end() {
+        for (ClassVisitor visitor : this.visitors.values()) {
+            visitor.visitEnd();
+        }
+    }
+
+    /**
+     * @return The class files, by internal name, starting with the program's own.
+     */
+    public Map<String, byte[]> dump() {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassWriter> entry : this.writers.entrySet()) {
+            classes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return classes;
+    }
+
+}
@@ -21,34 +21,40 @@
  */
 package com.gmail.socraticphoenix.brainjava.impl.fancy;
 
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
 import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
 import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
 import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckVisitor;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
-import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
 
+import java.util.List;
+
 public class WhileLoopVisitor implements BrainfuckVisitor, Opcodes {
     private ModelJavaBytecodeCompiler parent;
 
     private TapeModel model;
     private String cls;
-    private ClassWriter cw;
     private GeneratorAdapter body;
     private GeneratorAdapter loop;
+    private Partitions partitions;
     private int n;
 
-    public WhileLoopVisitor(ModelJavaBytecodeCompiler parent, TapeModel model, String cls, ClassWriter cw, GeneratorAdapter body, GeneratorAdapter loop, int n) {
-        this.cw = cw;
+    public WhileLoopVisitor(ModelJavaBytecodeCompiler parent, TapeModel model, String cls, GeneratorAdapter body, GeneratorAdapter loop, int n) {
         this.cls = cls;
         this.body = body;
         this.loop = loop;
+        this.partitions = new Partitions(parent, body);
         this.n = n;
         this.model = model;
         this.parent = parent;
@@ -74,20 +80,17 @@ public class WhileLoopVisitor implements BrainfuckVisitor, Opcodes {
     }
 
     @Override
-    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
-        int n = this.parent.nextLoopIndex();
-        
-        this.body.invokeStatic(Type.getObjectType(this.cls), new Method("loop" + n, Type.VOID_TYPE, new Type[0]));
-
-        MethodVisitor nLoop = this.cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n, "()V", null, null);
-        GeneratorAdapter nLoopAd = new GeneratorAdapter(nLoop, ACC_PUBLIC | ACC_STATIC, "loop" + n, "()V");
-
-        MethodVisitor nBody = this.cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "loop" + n + "$body", "()V", null, null);
-        GeneratorAdapter nBodyAd = new GeneratorAdapter(nBody, ACC_PUBLIC | ACC_STATIC, "loop" + n + "$body", "()V");
-        nLoopAd.visitCode();
-        nBodyAd.visitCode();
+    public void visitAll(List<Node> nodes) throws BrainfuckCompilationException {
+        for (Node node : nodes) {
+            this.body = this.partitions.next();
+            this.visitNode(node);
+        }
+    }
 
-        return new WhileLoopVisitor(this.parent, this.model, this.cls, this.cw, nBodyAd, nLoopAd, n);
+    @Override
+    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
+        this.body = this.partitions.next();
+        return this.parent.beginLoop(this.body);
     }
 
     @Override
@@ -120,8 +123,51 @@ public class WhileLoopVisitor implements BrainfuckVisitor, Opcodes {
         this.model.output(this.body);
     }
 
+    @Override
+    public void visitAdd(AddNode node) throws BrainfuckCompilationException {
+        this.model.add(this.body, node.getDelta());
+    }
+
+    @Override
+    public void visitMove(MoveNode node) throws BrainfuckCompilationException {
+        this.model.move(this.body, node.getDelta());
+    }
+
+    @Override
+    public void visitSetZero(SetZeroNode node) throws BrainfuckCompilationException {
+        if (this.model.cell().wraps()) {
+            this.model.setZero(this.body);
+        } else {
+            BrainfuckVisitor.super.visitSetZero(node);
+        }
+    }
+
+    @Override
+    public void visitMulAdd(MulAddNode node) throws BrainfuckCompilationException {
+        if (this.model.cell().wraps()) {
+            this.model.mulAdd(this.body, node.getOffsets(), node.getFactors());
+        } else {
+            BrainfuckVisitor.super.visitMulAdd(node);
+        }
+    }
+
+    @Override
+    public void visitScan(ScanNode node) throws BrainfuckCompilationException {
+        this.model.scan(this.body, node.getStride());
+    }
+
+    @Override
+    public void visitBlock(BlockNode node) throws BrainfuckCompilationException {
+        if (ModelJavaBytecodeCompiler.canAddress(this.model, node)) {
+            ModelJavaBytecodeCompiler.visitBlock(this.model, this.body, node);
+        } else {
+            BrainfuckVisitor.super.visitBlock(node);
+        }
+    }
+
     @Override
     public void visitEnd() throws BrainfuckCompilationException {
+        this.body = this.partitions.finish();
         this.body.returnValue();
         this.body.visitMaxs(0, 0);
         this.body.visitEnd();
@@ -22,9 +22,11 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 
 /**
@@ -36,13 +38,50 @@ import org.objectweb.asm.commons.GeneratorAdapter;
  *     <li>Convert input to the cell data type</li>
  *     <li>Check if the cell is zero</li>
  *     <li>Load the zero/defualt value</li>
- * </ul>=
+ * </ul>
+ * Every operation works on the primitive cell value, of the type given by {@link #valueType()}, on top of the JVM stack;
+ * boxing, if any, is left to the {@link TapeModel}.
  */
 public interface CellModel {
 
-    String type();
+    /**
+     * @return The primitive type used to store a cell. By default, this is the class named by {@link #type()}, for cells
+     * written before cells were primitive.
+     */
+    default Type valueType() {
+        return Type.getObjectType(this.type());
+    }
 
-    void initial(ClassWriter writer, MethodVisitor clinit);
+    /**
+     * @return The internal name of the class used to store a cell, the boxed {@link #valueType() value type}.
+     * @deprecated Cells are stored as primitives; use {@link #valueType()}. One of the two must be implemented.
+     */
+    @Deprecated
+    default String type() {
+        return CellModel.boxed(this.valueType()).getInternalName();
+    }
+
+    /**
+     * Defines the fields and static initialization of the cell. By default, this replays the members defined by
+     * {@link #initial(ClassWriter, MethodVisitor)} into {@code writer}.
+     *
+     * @param writer The class being generated.
+     * @param clinit The static initializer of the class.
+     */
+    default void initial(ClassVisitor writer, MethodVisitor clinit) {
+        ClassWriters.forward(writer, w -> this.initial(w, clinit));
+    }
+
+    /**
+     * @param writer The class being generated.
+     * @param clinit The static initializer of the class.
+     * @deprecated Classes are generated through a {@link ClassVisitor}; use
+     * {@link #initial(ClassVisitor, MethodVisitor)}. One of the two must be implemented.
+     */
+    @Deprecated
+    default void initial(ClassWriter writer, MethodVisitor clinit) {
+        this.initial((ClassVisitor) writer, clinit);
+    }
 
     void increment(GeneratorAdapter gen);
 
@@ -56,4 +95,154 @@ public interface CellModel {
 
     void isZero(GeneratorAdapter gen, Label ifZero);
 
+    /**
+     * The most single steps {@link #add(GeneratorAdapter, int)} generates inline by default, before it generates a loop.
+     */
+    int INLINE_STEPS = 4;
+
+    /**
+     * Adds {@code delta} to the cell value, as if it had been incremented or decremented {@code |delta|} times. By
+     * default, this repeats {@link #increment(GeneratorAdapter)} or {@link #decrement(GeneratorAdapter)}, in a loop
+     * counting down the steps if there are more than {@link #INLINE_STEPS}, so that the code stays the same size however
+     * large the delta.
+     *
+     * @param gen The method to generate the code in.
+     * @param delta The amount to add.
+     */
+    default void add(GeneratorAdapter gen, int delta) {
+        if (Math.abs((long) delta) <= INLINE_STEPS) {
+            for (int i = 0; i < Math.abs(delta); i++) {
+                if (delta > 0) {
+                    increment(gen);
+                } else {
+                    decrement(gen);
+                }
+            }
+            return;
+        }
+
+        int value = gen.newLocal(this.valueType());
+        int steps = gen.newLocal(Type.INT_TYPE);
+        Label start = gen.newLabel();
+        Label end = gen.newLabel();
+
+        gen.storeLocal(value);
+        gen.push(delta);
+        gen.storeLocal(steps);
+        gen.mark(start);
+        gen.loadLocal(steps);
+        gen.ifZCmp(GeneratorAdapter.EQ, end);
+        gen.loadLocal(value);
+        if (delta > 0) {
+            increment(gen);
+            gen.iinc(steps, -1);
+        } else {
+            decrement(gen);
+            gen.iinc(steps, 1);
+        }
+        gen.storeLocal(value);
+        gen.goTo(start);
+        gen.mark(end);
+        gen.loadLocal(value);
+    }
+
+    /**
+     * Whether this cell wraps around a range of values that contains zero, so that a loop stepping the cell by one
+     * always reaches zero, and the number of iterations can be computed with {@link #mulAdd(GeneratorAdapter, int)}. Loops
+     * are only replaced by arithmetic if this is true.
+     *
+     * @return True if this cell supports {@link #mulAdd(GeneratorAdapter, int)}.
+     */
+    default boolean wraps() {
+        return false;
+    }
+
+    /**
+     * Takes a target cell value and a counter cell value off the stack, and pushes the target plus the counter times
+     * {@code factor}. Only called if {@link #wraps()} is true. By default, this decrements the counter until it is zero,
+     * adding {@code factor} to the target each step, as the loop it replaces would; this is exact for any wrapping cell,
+     * but takes as long as the loop.
+     *
+     * @param gen The method to generate the code in.
+     * @param factor The amount to multiply the counter by.
+     */
+    default void mulAdd(GeneratorAdapter gen, int factor) {
+        int counter = gen.newLocal(this.valueType());
+        int target = gen.newLocal(this.valueType());
+        Label start = gen.newLabel();
+        Label end = gen.newLabel();
+
+        gen.storeLocal(counter);
+        gen.storeLocal(target);
+        gen.mark(start);
+        gen.loadLocal(counter);
+        this.isZero(gen, end);
+        gen.loadLocal(target);
+        this.add(gen, factor);
+        gen.storeLocal(target);
+        gen.loadLocal(counter);
+        this.decrement(gen);
+        gen.storeLocal(counter);
+        gen.goTo(start);
+        gen.mark(end);
+        gen.loadLocal(target);
+    }
+
+    /**
+     * Pushes a cell holding {@code value}. By default, this narrows {@code value} to the {@link #valueType() cell type},
+     * or adds it to the {@link #defualtValue(GeneratorAdapter) default value} of a boxed cell.
+     *
+     * @param gen The method to generate the code in.
+     * @param value The value of the cell.
+     */
+    default void constant(GeneratorAdapter gen, long value) {
+        switch (this.valueType().getSort()) {
+            case Type.LONG:
+                gen.push(value);
+                break;
+            case Type.BYTE:
+                gen.push((int) (byte) value);
+                break;
+            case Type.OBJECT:
+                //a boxed cell has no constants of its own, so the value is counted up from zero
+                this.defualtValue(gen);
+                for (long rest = value; rest != 0; ) {
+                    int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, rest));
+                    this.add(gen, step);
+                    rest -= step;
+                }
+                break;
+            default:
+                gen.push((int) value);
+                break;
+        }
+    }
+
+    /**
+     * @param primitive A primitive type.
+     * @return The class a value of {@code primitive} is boxed in, or {@code primitive} itself if it is not primitive.
+     */
+    static Type boxed(Type primitive) {
+        switch (primitive.getSort()) {
+            case Type.BOOLEAN:
+                return Type.getType(Boolean.class);
+            case Type.CHAR:
+                return Type.getType(Character.class);
+            case Type.BYTE:
+                return Type.getType(Byte.class);
+            case Type.SHORT:
+                return Type.getType(Short.class);
+            case Type.INT:
+                return Type.getType(Integer.class);
+            case Type.FLOAT:
+                return Type.getType(Float.class);
+            case Type.LONG:
+                return Type.getType(Long.class);
+            case Type.DOUBLE:
+                return Type.getType(Double.class);
+            default:
+                return primitive;
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.util.function.Consumer;
+
+/**
+ * Bridges models written against a {@link ClassWriter} to classes generated through a chain of {@link ClassVisitor}s.
+ */
+final class ClassWriters implements Opcodes {
+
+    private ClassWriters() {
+
+    }
+
+    /**
+     * Lets {@code members} define fields and methods in a scratch {@link ClassWriter}, and then replays them into
+     * {@code target}, or passes {@code target} itself if it is a {@link ClassWriter}.
+     *
+     * @param target The visitor of the class being generated.
+     * @param members Defines the members.
+     */
+    static void forward(ClassVisitor target, Consumer<ClassWriter> members) {
+        if (target instanceof ClassWriter) {
+            members.accept((ClassWriter) target);
+            return;
+        }
+
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_SUPER, "Members", null, "java/lang/Object", null);
+        members.accept(writer);
+        writer.visitEnd();
+        new ClassReader(writer.toByteArray()).accept(new ClassVisitor(ASM5, target) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+
+            }
+
+            @Override
+            public void visitEnd() {
+
+            }
+        }, 0);
+    }
+
+}
@@ -22,6 +22,7 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.commons.GeneratorAdapter;
@@ -39,7 +40,29 @@ import java.util.function.Consumer;
  */
 public interface IOModel {
 
-    void initial(String cls, ClassWriter writer, MethodVisitor clinit);
+    /**
+     * Defines the fields and static initialization of the IO. By default, this replays the members defined by
+     * {@link #initial(String, ClassWriter, MethodVisitor)} into {@code writer}.
+     *
+     * @param cls The internal name of the class being generated.
+     * @param writer The class being generated.
+     * @param clinit The static initializer of the class.
+     */
+    default void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+        ClassWriters.forward(writer, w -> this.initial(cls, w, clinit));
+    }
+
+    /**
+     * @param cls The internal name of the class being generated.
+     * @param writer The class being generated.
+     * @param clinit The static initializer of the class.
+     * @deprecated Classes are generated through a {@link ClassVisitor}; use
+     * {@link #initial(String, ClassVisitor, MethodVisitor)}. One of the two must be implemented.
+     */
+    @Deprecated
+    default void initial(String cls, ClassWriter writer, MethodVisitor clinit) {
+        this.initial(cls, (ClassVisitor) writer, clinit);
+    }
 
     void initialMethod(GeneratorAdapter main);
 
@@ -49,4 +72,15 @@ public interface IOModel {
 
     void end(GeneratorAdapter main);
 
+    /**
+     * Outputs a constant string, which is short enough to be a single constant in the class file. By default, this
+     * outputs each codepoint with {@link #output(GeneratorAdapter, Consumer)}.
+     *
+     * @param gen The method to generate the code in.
+     * @param text The text to output.
+     */
+    default void output(GeneratorAdapter gen, String text) {
+        text.codePoints().forEach(c -> output(gen, g -> g.push(c)));
+    }
+
 }
@@ -23,9 +23,14 @@ package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ArgumentIO;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ArrayTape;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BinaryIO;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BoundedLongCell;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BufferedIO;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.IntCell;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.LongCell;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.MappedIO;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.SystemIO;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.UnboundedTape;
 
@@ -58,8 +63,22 @@ public interface Models {
         return new UnboundedTape(cls, cellModel, ioModel);
     }
 
+    /**
+     * Creates a model with an unbounded tape stored in a growable primitive array of the cell model's type.
+     *
+     * @param cls The name of the class the program will be compiled to.
+     * @param cellModel The model of the individual cells.
+     * @param ioModel The model of the program's IO.
+     * @return A new model.
+     */
+    static TapeModel arrayTape(String cls, CellModel cellModel, IOModel ioModel) {
+        return new ArrayTape(cls, cellModel, ioModel);
+    }
+
     static CellModel boundedCell(long min, long max) {
-        if(min == Integer.MIN_VALUE && max == Integer.MAX_VALUE) {
+        if(min == 0 && max == 255) {
+            return new ByteCell();
+        } else if(min == Integer.MIN_VALUE && max == Integer.MAX_VALUE) {
             return new IntCell();
         } else if (min == Long.MIN_VALUE && max == Long.MAX_VALUE) {
             return new LongCell();
@@ -76,4 +95,36 @@ public interface Models {
         return new SystemIO(eof);
     }
 
+    /**
+     * Creates a model which reads and writes raw bytes through buffers over standard in and out.
+     *
+     * @param eof The value read once input is exhausted.
+     * @return A new model.
+     */
+    static IOModel binaryIO(int eof) {
+        return new BinaryIO(eof);
+    }
+
+    /**
+     * Creates a model which reads raw bytes from a memory mapped input file, and writes them to an output file, both
+     * given as arguments to the program.
+     *
+     * @param eof The value read once input is exhausted.
+     * @return A new model.
+     */
+    static IOModel mappedIO(int eof) {
+        return new MappedIO(eof);
+    }
+
+    /**
+     * Creates a model which takes input from the given model, and buffers output.
+     *
+     * @param input The model to take input from.
+     * @param policy When, besides when the buffer is full and at the end of the program, output is flushed.
+     * @return A new model.
+     */
+    static IOModel bufferedIO(IOModel input, BufferedIO.FlushPolicy policy) {
+        return new BufferedIO(input, policy);
+    }
+
 }
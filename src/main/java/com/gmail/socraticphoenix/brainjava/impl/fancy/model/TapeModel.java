@@ -22,8 +22,14 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.function.Consumer;
 
 /**
  * A model used by the {@link ModelJavaBytecodeCompiler}. This model represents the tape, as well as the individual cells
@@ -35,7 +41,8 @@ import org.objectweb.asm.commons.GeneratorAdapter;
  *     <li>Decrement the cell under the pointer</li>
  *     <li>Store input in the cell under the pointer</li>
  *     <li>Output the value of the cell under the pointer</li>
- *     <li>Load the value of the current cell onto the JVM stack</li>
+ *     <li>Load the primitive value of the current cell onto the JVM stack</li>
+ *     <li>Store a primitive value into the current cell</li>
  * </ul>
  */
 public interface TapeModel {
@@ -44,10 +51,95 @@ public interface TapeModel {
 
     IOModel input();
 
-    void initial(ClassWriter writer);
+    /**
+     * Defines the fields and static initialization of the tape, and of its cell and IO. By default, this replays the members
+     * defined by {@link #initial(ClassWriter)} into {@code writer}.
+     *
+     * @param writer The class being generated.
+     */
+    default void initial(ClassVisitor writer) {
+        ClassWriters.forward(writer, this::initial);
+    }
+
+    /**
+     * @param writer The class being generated.
+     * @deprecated Classes are generated through a {@link ClassVisitor}; use {@link #initial(ClassVisitor)}. One of the
+     * two must be implemented.
+     */
+    @Deprecated
+    default void initial(ClassWriter writer) {
+        this.initial((ClassVisitor) writer);
+    }
 
     void initialMethod(GeneratorAdapter gen);
 
+    /**
+     * @return The signature of the method the program is compiled into. By default, this is the {@code main} method of the
+     * class.
+     */
+    default Method entry() {
+        return new Method("main", Type.VOID_TYPE, new Type[]{Type.getType(String[].class)});
+    }
+
+    /**
+     * Moves the state of the tape into local variables of {@code gen}, for the rest of the method. Only called if loops
+     * are compiled into that one method, so that the state only leaves it through
+     * {@link #invokePartition(GeneratorAdapter, Type, Method) partitions}, directly after
+     * {@link #initialMethod(GeneratorAdapter)}.
+     * <p>
+     * Of the built-in tapes, only {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ArrayTape} does so.
+     * Every other tape keeps its state in fields, even with inline loops, and its partitions take no arguments.
+     *
+     * @param gen The method the program is compiled into.
+     * @return Whether the state was moved; by default, it is not.
+     */
+    default boolean localize(GeneratorAdapter gen) {
+        return false;
+    }
+
+    /**
+     * Creates the signature of a method that a part of the program is moved into. By default, it takes and returns
+     * nothing, as the state of the tape is kept in fields.
+     *
+     * @param name The name of the method.
+     * @return The signature of the method.
+     */
+    default Method partition(String name) {
+        return new Method(name, Type.VOID_TYPE, new Type[0]);
+    }
+
+    /**
+     * Calls a method created by {@link #partition(String)}, passing it the state of the tape and taking the state back
+     * from it, if the state is held in locals.
+     *
+     * @param gen The method to generate the call in.
+     * @param owner The class containing the method.
+     * @param method The method to call.
+     */
+    default void invokePartition(GeneratorAdapter gen, Type owner, Method method) {
+        gen.invokeStatic(owner, method);
+    }
+
+    /**
+     * Starts generating a method created by {@link #partition(String)}, taking the state of the tape from its arguments.
+     * Every call must be matched by a call to {@link #endPartition(GeneratorAdapter)} on the same method, and calls may be
+     * nested.
+     *
+     * @param gen The partition method.
+     */
+    default void beginPartition(GeneratorAdapter gen) {
+
+    }
+
+    /**
+     * Returns from a method created by {@link #partition(String)}, giving back the state of the tape.
+     *
+     * @param gen The partition method.
+     */
+    default void endPartition(GeneratorAdapter gen) {
+        gen.returnValue();
+    }
+
     void advance(GeneratorAdapter gen);
 
     void retreat(GeneratorAdapter gen);
@@ -62,6 +154,252 @@ public interface TapeModel {
 
     void get(GeneratorAdapter gen);
 
+    /**
+     * Stores the value pushed by {@code getVal} into the cell under the pointer. By default, this clears the cell and
+     * counts the value into it one step at a time, as {@code [-]>[-<+>]<} would, which is exact for a
+     * {@link CellModel#wraps() wrapping} cell but takes as long as that loop; tapes should implement it directly.
+     *
+     * @param gen The method to generate the code in.
+     * @param getVal Pushes the value to store, and may read the cell under the pointer.
+     */
+    default void set(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        int value = gen.newLocal(this.cell().valueType());
+        Label clear = gen.newLabel();
+        Label count = gen.newLabel();
+        Label end = gen.newLabel();
+
+        getVal.accept(gen);
+        gen.storeLocal(value);
+        gen.mark(clear);
+        get(gen);
+        this.cell().isZero(gen, count);
+        decrement(gen);
+        gen.goTo(clear);
+        gen.mark(count);
+        gen.loadLocal(value);
+        this.cell().isZero(gen, end);
+        gen.loadLocal(value);
+        this.cell().decrement(gen);
+        gen.storeLocal(value);
+        increment(gen);
+        gen.goTo(count);
+        gen.mark(end);
+    }
+
     void end(GeneratorAdapter main);
 
+    /**
+     * Adds {@code delta} to the cell under the pointer. By default, this repeats {@link #increment(GeneratorAdapter)} or
+     * {@link #decrement(GeneratorAdapter)}.
+     *
+     * @param gen The method to generate the code in.
+     * @param delta The amount to add.
+     */
+    default void add(GeneratorAdapter gen, int delta) {
+        for (int i = 0; i < Math.abs(delta); i++) {
+            if (delta > 0) {
+                increment(gen);
+            } else {
+                decrement(gen);
+            }
+        }
+    }
+
+    /**
+     * Moves the pointer by {@code delta} cells. By default, this repeats {@link #advance(GeneratorAdapter)} or
+     * {@link #retreat(GeneratorAdapter)}.
+     *
+     * @param gen The method to generate the code in.
+     * @param delta The number of cells to move.
+     */
+    default void move(GeneratorAdapter gen, int delta) {
+        for (int i = 0; i < Math.abs(delta); i++) {
+            if (delta > 0) {
+                advance(gen);
+            } else {
+                retreat(gen);
+            }
+        }
+    }
+
+    /**
+     * Sets the cell under the pointer to zero.
+     *
+     * @param gen The method to generate the code in.
+     */
+    default void setZero(GeneratorAdapter gen) {
+        set(gen, this.cell()::defualtValue);
+    }
+
+    /**
+     * Adds {@code factors[i]} times the cell under the pointer to the cell at {@code offsets[i]} from the pointer, for each
+     * {@code i}, and then sets the cell under the pointer to zero. Only called if the {@link CellModel#wraps() cell wraps}.
+     * By default, this visits each target cell with {@link #move(GeneratorAdapter, int)}.
+     *
+     * @param gen The method to generate the code in.
+     * @param offsets The offsets of the target cells.
+     * @param factors The factor for each target cell.
+     */
+    default void mulAdd(GeneratorAdapter gen, int[] offsets, int[] factors) {
+        int counter = gen.newLocal(this.cell().valueType());
+        get(gen);
+        gen.storeLocal(counter);
+
+        int position = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            int factor = factors[i];
+            move(gen, offsets[i] - position);
+            position = offsets[i];
+            set(gen, g -> {
+                get(g);
+                g.loadLocal(counter);
+                this.cell().mulAdd(g, factor);
+            });
+        }
+        move(gen, -position);
+        setZero(gen);
+    }
+
+    /**
+     * Moves the pointer by {@code stride} cells until the cell under it is zero. By default, this generates the
+     * equivalent loop.
+     *
+     * @param gen The method to generate the code in.
+     * @param stride The number of cells to move by each step.
+     */
+    default void scan(GeneratorAdapter gen, int stride) {
+        Label start = gen.newLabel();
+        Label end = gen.newLabel();
+        gen.mark(start);
+        get(gen);
+        this.cell().isZero(gen, end);
+        move(gen, stride);
+        gen.goTo(start);
+        gen.mark(end);
+    }
+
+    /**
+     * Sets the cell {@code offset + i} cells away from the pointer to {@code cells[i]} for each {@code i}, and then moves
+     * the pointer by {@code pointer} cells. Only called at the start of the program, while the cells it sets are still
+     * zero, possibly several times for parts of one snapshot. By default, this moves to and sets each non-zero cell.
+     *
+     * @param gen The method to generate the code in.
+     * @param cells The values of the cells.
+     * @param offset The offset of the first cell.
+     * @param pointer The number of cells to move the pointer by.
+     */
+    default void preset(GeneratorAdapter gen, long[] cells, int offset, int pointer) {
+        int position = 0;
+        for (int i = 0; i < cells.length; i++) {
+            long value = cells[i];
+            if (value != 0) {
+                move(gen, offset + i - position);
+                position = offset + i;
+                set(gen, g -> this.cell().constant(g, value));
+            }
+        }
+        move(gen, pointer - position);
+    }
+
+    /**
+     * @return Whether this tape implements the operations at an offset from the pointer, used to compile
+     * {@link com.gmail.socraticphoenix.brainjava.ast.BlockNode}s, without moving the pointer. If this returns
+     * {@code false}, blocks are compiled as the nodes they contain; the default operations move to each cell and back,
+     * which gains nothing over that.
+     */
+    default boolean addressable() {
+        return false;
+    }
+
+    /**
+     * Starts a block of operations at offsets from the pointer. Every operation and move until the matching
+     * {@link #exit(GeneratorAdapter, int)} stays within {@code min} and {@code max} cells of the pointer.
+     *
+     * @param gen The method to generate the code in.
+     * @param min The lowest offset accessed in the block.
+     * @param max The highest offset accessed in the block.
+     */
+    default void enter(GeneratorAdapter gen, int min, int max) {
+
+    }
+
+    /**
+     * Ends the current block, moving the pointer by {@code shift} cells. By default, this calls
+     * {@link #move(GeneratorAdapter, int)}.
+     *
+     * @param gen The method to generate the code in.
+     * @param shift The number of cells to move the pointer by.
+     */
+    default void exit(GeneratorAdapter gen, int shift) {
+        move(gen, shift);
+    }
+
+    /**
+     * Adds {@code delta} to the cell {@code offset} cells away from the pointer, within a block. By default, this moves
+     * the pointer to the cell and back.
+     *
+     * @param gen The method to generate the code in.
+     * @param delta The amount to add.
+     * @param offset The offset of the cell.
+     */
+    default void add(GeneratorAdapter gen, int delta, int offset) {
+        move(gen, offset);
+        add(gen, delta);
+        move(gen, -offset);
+    }
+
+    /**
+     * Stores input in the cell {@code offset} cells away from the pointer, within a block. By default, this moves the
+     * pointer to the cell and back.
+     *
+     * @param gen The method to generate the code in.
+     * @param offset The offset of the cell.
+     */
+    default void input(GeneratorAdapter gen, int offset) {
+        move(gen, offset);
+        input(gen);
+        move(gen, -offset);
+    }
+
+    /**
+     * Outputs the cell {@code offset} cells away from the pointer, within a block. By default, this moves the pointer to
+     * the cell and back.
+     *
+     * @param gen The method to generate the code in.
+     * @param offset The offset of the cell.
+     */
+    default void output(GeneratorAdapter gen, int offset) {
+        move(gen, offset);
+        output(gen);
+        move(gen, -offset);
+    }
+
+    /**
+     * Sets the cell {@code offset} cells away from the pointer to zero, within a block. By default, this moves the
+     * pointer to the cell and back.
+     *
+     * @param gen The method to generate the code in.
+     * @param offset The offset of the cell.
+     */
+    default void setZero(GeneratorAdapter gen, int offset) {
+        move(gen, offset);
+        setZero(gen);
+        move(gen, -offset);
+    }
+
+    /**
+     * Performs {@link #mulAdd(GeneratorAdapter, int[], int[])} as if the pointer were {@code offset} cells away from
+     * where it is, within a block. By default, this moves the pointer to the source cell and back.
+     *
+     * @param gen The method to generate the code in.
+     * @param offset The offset of the source cell.
+     * @param offsets The offsets of the target cells, relative to the source cell.
+     * @param factors The factor for each target cell.
+     */
+    default void mulAdd(GeneratorAdapter gen, int offset, int[] offsets, int[] factors) {
+        move(gen, offset);
+        mulAdd(gen, offsets, factors);
+        move(gen, -offset);
+    }
+
 }
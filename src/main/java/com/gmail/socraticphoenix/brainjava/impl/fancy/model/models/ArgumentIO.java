@@ -22,7 +22,7 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -43,9 +43,9 @@ public class ArgumentIO implements IOModel, Opcodes {
     }
 
     @Override
-    public void initial(String cls, ClassWriter writer, MethodVisitor clinit) {
-        writer.visitField(ACC_STATIC | ACC_PRIVATE, "input", "[I", null, null);
-        writer.visitField(ACC_STATIC | ACC_PRIVATE, "inputPointer", "I", null, 0);
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+        writer.visitField(ACC_STATIC, "input", "[I", null, null);
+        writer.visitField(ACC_STATIC, "inputPointer", "I", null, 0);
         this.self = Type.getObjectType(cls);
     }
 
@@ -109,6 +109,13 @@ public class ArgumentIO implements IOModel, Opcodes {
 
     }
 
+    @Override
+    public void output(GeneratorAdapter gen, String text) {
+        gen.getStatic(Type.getType(System.class), "out", Type.getType(PrintStream.class));
+        gen.push(text);
+        gen.invokeVirtual(Type.getType(PrintStream.class), new Method("print", Type.VOID_TYPE, new Type[]{Type.getType(String.class)}));
+    }
+
     @Override
     public void end(GeneratorAdapter main) {
 
@@ -0,0 +1,616 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.Stack;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TapeModel} with a theoretically infinite tape. In practice, the tape can be at most 2<sup>31</sup> cells wide.
+ * The tape is implemented as a single primitive array of the {@link CellModel#valueType() cell type}, with the pointer as an
+ * index into it. Whenever the pointer leaves the array, the array is at least doubled, towards whichever side the pointer
+ * left it.
+ */
+public class ArrayTape implements TapeModel, Opcodes {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private CellModel cell;
+    private IOModel input;
+    private String cls;
+    private int capacity;
+
+    private Type self;
+    private Type array;
+
+    private int blockTape = -1;
+    private int blockPointer = -1;
+    private int localTape = -1;
+    private int localPointer = -1;
+    private Stack<int[]> partitions = new Stack<>();
+
+    public ArrayTape(String cls, CellModel cell, IOModel input, int capacity) {
+        this.cell = cell;
+        this.input = input;
+        this.cls = cls;
+        this.capacity = capacity;
+        this.self = Type.getObjectType(cls);
+        this.array = Type.getType("[" + cell.valueType().getDescriptor());
+    }
+
+    public ArrayTape(String cls, CellModel cell, IOModel input) {
+        this(cls, cell, input, DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public CellModel cell() {
+        return this.cell;
+    }
+
+    @Override
+    public IOModel input() {
+        return this.input;
+    }
+
+    @Override
+    public void initial(ClassVisitor writer) {
+        writer.visitField(ACC_STATIC, "pointer", "I", null, 0).visitEnd();
+        writer.visitField(ACC_STATIC, "tape", this.array.getDescriptor(), null, null).visitEnd();
+
+        GeneratorAdapter clinit = new GeneratorAdapter(writer.visitMethod(ACC_STATIC | ACC_PUBLIC, "<clinit>", "()V", null, null), ACC_STATIC | ACC_PUBLIC, "<clinit>", "()V");
+        clinit.visitCode();
+        clinit.push(this.capacity);
+        clinit.newArray(this.cell.valueType());
+        clinit.putStatic(this.self, "tape", this.array);
+        clinit.push(this.capacity / 2);
+        clinit.putStatic(this.self, "pointer", Type.INT_TYPE);
+
+        this.cell.initial(writer, clinit);
+        this.input.initial(this.cls, writer, clinit);
+
+        clinit.returnValue();
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        this.widenMethod(writer);
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter gen) {
+        this.input.initialMethod(gen);
+    }
+
+    @Override
+    public boolean localize(GeneratorAdapter gen) {
+        this.localTape = gen.newLocal(this.array);
+        this.localPointer = gen.newLocal(Type.INT_TYPE);
+        gen.getStatic(this.self, "tape", this.array);
+        gen.storeLocal(this.localTape);
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.storeLocal(this.localPointer);
+        return true;
+    }
+
+    @Override
+    public Method partition(String name) {
+        if (this.localPointer >= 0) {
+            return new Method(name, Type.INT_TYPE, new Type[]{Type.INT_TYPE});
+        }
+        return TapeModel.super.partition(name);
+    }
+
+    @Override
+    public void invokePartition(GeneratorAdapter gen, Type owner, Method method) {
+        if (this.localPointer >= 0) {
+            //the partition may have widened the tape
+            gen.loadLocal(this.localPointer);
+            gen.invokeStatic(owner, method);
+            gen.storeLocal(this.localPointer);
+            gen.getStatic(this.self, "tape", this.array);
+            gen.storeLocal(this.localTape);
+        } else {
+            gen.invokeStatic(owner, method);
+        }
+    }
+
+    @Override
+    public void beginPartition(GeneratorAdapter gen) {
+        this.partitions.push(new int[]{this.localTape, this.localPointer});
+        if (this.localPointer >= 0) {
+            this.localTape = gen.newLocal(this.array);
+            this.localPointer = gen.newLocal(Type.INT_TYPE);
+            gen.getStatic(this.self, "tape", this.array);
+            gen.storeLocal(this.localTape);
+            gen.loadArg(0);
+            gen.storeLocal(this.localPointer);
+        }
+    }
+
+    @Override
+    public void endPartition(GeneratorAdapter gen) {
+        if (this.localPointer >= 0) {
+            gen.loadLocal(this.localPointer);
+        }
+        gen.returnValue();
+
+        int[] locals = this.partitions.pop();
+        this.localTape = locals[0];
+        this.localPointer = locals[1];
+    }
+
+    @Override
+    public void advance(GeneratorAdapter gen) {
+        this.move(gen, 1);
+    }
+
+    @Override
+    public void retreat(GeneratorAdapter gen) {
+        this.move(gen, -1);
+    }
+
+    @Override
+    public void increment(GeneratorAdapter gen) {
+        this.update(gen, this.cell::increment);
+    }
+
+    @Override
+    public void decrement(GeneratorAdapter gen) {
+        this.update(gen, this.cell::decrement);
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        this.set(gen, g -> {
+            this.input.input(g);
+            this.cell.fromCodepoint(g);
+        });
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen) {
+        this.input.output(gen, g -> {
+            get(g);
+            this.cell.toCodepoint(g);
+        });
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        this.update(gen, g -> this.cell.add(g, delta));
+    }
+
+    @Override
+    public void move(GeneratorAdapter gen, int delta) {
+        if (this.localPointer >= 0) {
+            iinc(gen, this.localPointer, delta);
+            gen.loadLocal(this.localPointer);
+        } else {
+            this.loadPointer(gen);
+            gen.push(delta);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.dup();
+            gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+        }
+
+        Label inside = gen.newLabel();
+        if (delta > 0) {
+            this.loadTape(gen);
+            gen.arrayLength();
+            gen.ifICmp(GeneratorAdapter.LT, inside);
+        } else {
+            gen.ifZCmp(GeneratorAdapter.GE, inside);
+        }
+        this.widen(gen, 0, 0);
+        gen.mark(inside);
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int[] offsets, int[] factors) {
+        int min = 0;
+        int max = 0;
+        for (int offset : offsets) {
+            min = Math.min(min, offset);
+            max = Math.max(max, offset);
+        }
+        this.reserve(gen, min, max);
+
+        int counter = gen.newLocal(this.cell.valueType());
+        get(gen);
+        gen.storeLocal(counter);
+        for (int i = 0; i < offsets.length; i++) {
+            int factor = factors[i];
+            this.loadTape(gen);
+            this.loadPointer(gen);
+            gen.push(offsets[i]);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.dup2();
+            gen.arrayLoad(this.cell.valueType());
+            gen.loadLocal(counter);
+            this.cell.mulAdd(gen, factor);
+            gen.arrayStore(this.cell.valueType());
+        }
+        this.setZero(gen);
+    }
+
+    @Override
+    public void scan(GeneratorAdapter gen, int stride) {
+        int tape = this.localTape;
+        int pointer = this.localPointer;
+        if (this.localPointer < 0) {
+            tape = gen.newLocal(this.array);
+            pointer = gen.newLocal(Type.INT_TYPE);
+            this.loadTape(gen);
+            gen.storeLocal(tape);
+            this.loadPointer(gen);
+            gen.storeLocal(pointer);
+        }
+
+        //cells outside of the tape are zero, so the search also stops there
+        Label loop = gen.newLabel();
+        Label edge = gen.newLabel();
+        Label found = gen.newLabel();
+        Label done = gen.newLabel();
+        gen.mark(loop);
+        gen.loadLocal(pointer);
+        if (stride > 0) {
+            gen.loadLocal(tape);
+            gen.arrayLength();
+            gen.ifICmp(GeneratorAdapter.GE, edge);
+        } else {
+            gen.ifZCmp(GeneratorAdapter.LT, edge);
+        }
+        gen.loadLocal(tape);
+        gen.loadLocal(pointer);
+        gen.arrayLoad(this.cell.valueType());
+        this.cell.isZero(gen, found);
+        iinc(gen, pointer, stride);
+        gen.goTo(loop);
+
+        gen.mark(edge);
+        this.storePointer(gen, pointer);
+        this.widen(gen, 0, 0);
+        gen.goTo(done);
+
+        gen.mark(found);
+        this.storePointer(gen, pointer);
+        gen.mark(done);
+    }
+
+    @Override
+    public void preset(GeneratorAdapter gen, long[] cells, int offset, int pointer) {
+        int min = Math.min(0, pointer);
+        int max = Math.max(0, pointer);
+        if (cells.length > 0) {
+            min = Math.min(min, offset);
+            max = Math.max(max, offset + cells.length - 1);
+        }
+
+        this.enter(gen, min, max);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                this.index(gen, offset + i);
+                this.cell.constant(gen, cells[i]);
+                gen.arrayStore(this.cell.valueType());
+            }
+        }
+        this.exit(gen, pointer);
+    }
+
+    @Override
+    public boolean addressable() {
+        return true;
+    }
+
+    @Override
+    public void enter(GeneratorAdapter gen, int min, int max) {
+        this.reserve(gen, min, max);
+        if (this.localPointer >= 0) {
+            this.blockTape = this.localTape;
+            this.blockPointer = this.localPointer;
+            return;
+        }
+        this.blockTape = gen.newLocal(this.array);
+        this.blockPointer = gen.newLocal(Type.INT_TYPE);
+        this.loadTape(gen);
+        gen.storeLocal(this.blockTape);
+        this.loadPointer(gen);
+        gen.storeLocal(this.blockPointer);
+    }
+
+    @Override
+    public void exit(GeneratorAdapter gen, int shift) {
+        //the block reserved every cell it moves to, so no bounds check is needed
+        if (shift != 0 && this.localPointer >= 0) {
+            iinc(gen, this.localPointer, shift);
+        } else if (shift != 0) {
+            gen.loadLocal(this.blockPointer);
+            gen.push(shift);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+        }
+        this.blockTape = -1;
+        this.blockPointer = -1;
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta, int offset) {
+        this.index(gen, offset);
+        gen.dup2();
+        gen.arrayLoad(this.cell.valueType());
+        this.cell.add(gen, delta);
+        gen.arrayStore(this.cell.valueType());
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen, int offset) {
+        this.index(gen, offset);
+        this.input.input(gen);
+        this.cell.fromCodepoint(gen);
+        gen.arrayStore(this.cell.valueType());
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, int offset) {
+        this.input.output(gen, g -> {
+            this.index(g, offset);
+            g.arrayLoad(this.cell.valueType());
+            this.cell.toCodepoint(g);
+        });
+    }
+
+    @Override
+    public void setZero(GeneratorAdapter gen, int offset) {
+        this.index(gen, offset);
+        this.cell.defualtValue(gen);
+        gen.arrayStore(this.cell.valueType());
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int offset, int[] offsets, int[] factors) {
+        int counter = gen.newLocal(this.cell.valueType());
+        this.index(gen, offset);
+        gen.arrayLoad(this.cell.valueType());
+        gen.storeLocal(counter);
+        for (int i = 0; i < offsets.length; i++) {
+            this.index(gen, offset + offsets[i]);
+            gen.dup2();
+            gen.arrayLoad(this.cell.valueType());
+            gen.loadLocal(counter);
+            this.cell.mulAdd(gen, factors[i]);
+            gen.arrayStore(this.cell.valueType());
+        }
+        this.setZero(gen, offset);
+    }
+
+    @Override
+    public void get(GeneratorAdapter gen) {
+        this.loadTape(gen);
+        this.loadPointer(gen);
+        gen.arrayLoad(this.cell.valueType());
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+        this.input.end(main);
+    }
+
+    @Override
+    public void set(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        this.loadTape(gen);
+        this.loadPointer(gen);
+        getVal.accept(gen);
+        gen.arrayStore(this.cell.valueType());
+    }
+
+    private void update(GeneratorAdapter gen, Consumer<GeneratorAdapter> op) {
+        this.loadTape(gen);
+        this.loadPointer(gen);
+        gen.dup2();
+        gen.arrayLoad(this.cell.valueType());
+        op.accept(gen);
+        gen.arrayStore(this.cell.valueType());
+    }
+
+    /**
+     * Pushes the tape and the index {@code offset} cells away from the pointer, using the locals of the current block.
+     */
+    private void index(GeneratorAdapter gen, int offset) {
+        gen.loadLocal(this.blockTape);
+        gen.loadLocal(this.blockPointer);
+        if (offset != 0) {
+            gen.push(offset);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        }
+    }
+
+    /**
+     * Ensures that the cells from {@code min} to {@code max} cells away from the pointer are within the tape. The cell
+     * under the pointer always is, so only the sides that reach past it are checked.
+     */
+    private void reserve(GeneratorAdapter gen, int min, int max) {
+        if (min >= 0 && max <= 0) {
+            return;
+        }
+
+        Label widen = gen.newLabel();
+        Label inside = gen.newLabel();
+        if (min < 0) {
+            this.loadPointer(gen);
+            gen.push(min);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.ifZCmp(GeneratorAdapter.LT, widen);
+        }
+        if (max > 0) {
+            this.loadPointer(gen);
+            gen.push(max);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            this.loadTape(gen);
+            gen.arrayLength();
+            gen.ifICmp(GeneratorAdapter.LT, inside);
+        } else {
+            gen.goTo(inside);
+        }
+        gen.mark(widen);
+        this.widen(gen, min, max);
+        gen.mark(inside);
+    }
+
+    /**
+     * Calls {@code widen(min, max)}, keeping the locals holding the tape and pointer, if any, up to date.
+     */
+    private void widen(GeneratorAdapter gen, int min, int max) {
+        if (this.localPointer >= 0) {
+            gen.loadLocal(this.localPointer);
+            gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+        }
+        gen.push(min);
+        gen.push(max);
+        gen.invokeStatic(this.self, new Method("widen", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE}));
+        if (this.localPointer >= 0) {
+            gen.getStatic(this.self, "tape", this.array);
+            gen.storeLocal(this.localTape);
+            gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+            gen.storeLocal(this.localPointer);
+        }
+    }
+
+    /**
+     * Adds {@code delta} to the int local {@code local}, with an {@code iinc} if {@code delta} fits in its 16 bit operand.
+     */
+    private static void iinc(GeneratorAdapter gen, int local, int delta) {
+        if (delta == (short) delta) {
+            gen.iinc(local, delta);
+        } else {
+            gen.loadLocal(local);
+            gen.push(delta);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.storeLocal(local);
+        }
+    }
+
+    private void loadTape(GeneratorAdapter gen) {
+        if (this.localTape >= 0) {
+            gen.loadLocal(this.localTape);
+        } else {
+            gen.getStatic(this.self, "tape", this.array);
+        }
+    }
+
+    private void loadPointer(GeneratorAdapter gen) {
+        if (this.localPointer >= 0) {
+            gen.loadLocal(this.localPointer);
+        } else {
+            gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        }
+    }
+
+    /**
+     * Sets the pointer to the value of the {@code pointer} local, unless that is already the local holding the pointer.
+     */
+    private void storePointer(GeneratorAdapter gen, int pointer) {
+        if (pointer != this.localPointer) {
+            gen.loadLocal(pointer);
+            gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+        }
+    }
+
+    /**
+     * Generates {@code widen(int min, int max)}, which grows the tape until both {@code pointer + min} and
+     * {@code pointer + max} are valid indices, moving the pointer along with the cells if the tape grows to the left.
+     */
+    private void widenMethod(ClassVisitor writer) {
+        Method widen = new Method("widen", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE});
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, widen, null, null, writer);
+        gen.visitCode();
+
+        int length = gen.newLocal(Type.INT_TYPE);
+        int shift = gen.newLocal(Type.INT_TYPE);
+        int grown = gen.newLocal(this.array);
+
+        gen.getStatic(this.self, "tape", this.array);
+        gen.arrayLength();
+        gen.storeLocal(length);
+
+        //shift = pointer + min < 0 ? length - (pointer + min) : 0
+        Label noShift = gen.newLabel();
+        Label shifted = gen.newLabel();
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.loadArg(0);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.dup();
+        gen.ifZCmp(GeneratorAdapter.GE, noShift);
+        gen.loadLocal(length);
+        gen.swap();
+        gen.math(GeneratorAdapter.SUB, Type.INT_TYPE);
+        gen.goTo(shifted);
+        gen.mark(noShift);
+        gen.pop();
+        gen.push(0);
+        gen.mark(shifted);
+        gen.storeLocal(shift);
+
+        //grown = new T[max(length * 2, max(length, pointer + max + 1) + shift)]
+        gen.loadLocal(length);
+        gen.push(1);
+        gen.math(GeneratorAdapter.SHL, Type.INT_TYPE);
+        gen.loadLocal(length);
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.loadArg(1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.push(1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.invokeStatic(Type.getType(Math.class), new Method("max", Type.INT_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE}));
+        gen.loadLocal(shift);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.invokeStatic(Type.getType(Math.class), new Method("max", Type.INT_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE}));
+        gen.newArray(this.cell.valueType());
+        gen.storeLocal(grown);
+
+        gen.getStatic(this.self, "tape", this.array);
+        gen.push(0);
+        gen.loadLocal(grown);
+        gen.loadLocal(shift);
+        gen.loadLocal(length);
+        gen.invokeStatic(Type.getType(System.class), new Method("arraycopy", Type.VOID_TYPE, new Type[]{Type.getType(Object.class), Type.INT_TYPE, Type.getType(Object.class), Type.INT_TYPE, Type.INT_TYPE}));
+
+        gen.loadLocal(grown);
+        gen.putStatic(this.self, "tape", this.array);
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.loadLocal(shift);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * An {@link IOModel} which treats IO as raw bytes. Input is read from {@link System#in}, and output is written to
+ * {@link FileDescriptor#out}, both through large byte buffers and without any charset. Output values are truncated to
+ * their lowest 8 bits. Pending output is flushed before the input buffer is refilled, and at the end of the program.
+ * <p>
+ * The streams are held in the public fields {@code in} and {@code out}, which a host running the program in the same
+ * JVM may replace before running it.
+ */
+public class BinaryIO implements IOModel, Opcodes {
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Type BYTES = Type.getType(byte[].class);
+    private static final Type INPUT_STREAM = Type.getType(InputStream.class);
+    private static final Type OUTPUT_STREAM = Type.getType(OutputStream.class);
+    private static final Method READ_BYTE = new Method("readByte", Type.INT_TYPE, new Type[0]);
+    private static final Method WRITE_BYTE = new Method("writeByte", Type.VOID_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method FLUSH_OUTPUT = new Method("flushOutput", Type.VOID_TYPE, new Type[0]);
+    private static final Method WRITE = new Method("write", Type.VOID_TYPE, new Type[]{BYTES, Type.INT_TYPE, Type.INT_TYPE});
+
+    private Type cls;
+    private int eof;
+
+    public BinaryIO(int eof) {
+        this.eof = eof;
+    }
+
+    @Override
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+        this.cls = Type.getObjectType(cls);
+        writer.visitField(ACC_PUBLIC | ACC_STATIC, "in", INPUT_STREAM.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_PUBLIC | ACC_STATIC, "out", OUTPUT_STREAM.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "inputBuffer", BYTES.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "inputPosition", "I", null, 0).visitEnd();
+        writer.visitField(ACC_STATIC, "inputLimit", "I", null, 0).visitEnd();
+        writer.visitField(ACC_STATIC, "outputBuffer", BYTES.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "outputCount", "I", null, 0).visitEnd();
+
+        clinit.visitLdcInsn(BUFFER_SIZE);
+        clinit.visitIntInsn(NEWARRAY, T_BYTE);
+        clinit.visitFieldInsn(PUTSTATIC, cls, "inputBuffer", BYTES.getDescriptor());
+        clinit.visitLdcInsn(BUFFER_SIZE);
+        clinit.visitIntInsn(NEWARRAY, T_BYTE);
+        clinit.visitFieldInsn(PUTSTATIC, cls, "outputBuffer", BYTES.getDescriptor());
+
+        clinit.visitFieldInsn(GETSTATIC, "java/lang/System", "in", INPUT_STREAM.getDescriptor());
+        clinit.visitFieldInsn(PUTSTATIC, cls, "in", INPUT_STREAM.getDescriptor());
+        clinit.visitTypeInsn(NEW, "java/io/FileOutputStream");
+        clinit.visitInsn(DUP);
+        clinit.visitFieldInsn(GETSTATIC, "java/io/FileDescriptor", "out", "Ljava/io/FileDescriptor;");
+        clinit.visitMethodInsn(INVOKESPECIAL, "java/io/FileOutputStream", "<init>", "(Ljava/io/FileDescriptor;)V", false);
+        clinit.visitFieldInsn(PUTSTATIC, cls, "out", OUTPUT_STREAM.getDescriptor());
+
+        this.readByteMethod(writer);
+        this.writeByteMethod(writer);
+        this.flushOutputMethod(writer);
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter main) {
+
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        gen.invokeStatic(this.cls, READ_BYTE);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        getVal.accept(gen);
+        gen.invokeStatic(this.cls, WRITE_BYTE);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, String text) {
+        StringBuilder bytes = new StringBuilder();
+        text.codePoints().forEach(c -> bytes.append((char) (c & 0xFF)));
+
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        gen.getStatic(this.cls, "out", OUTPUT_STREAM);
+        gen.push(bytes.toString());
+        gen.getStatic(Type.getType(StandardCharsets.class), "ISO_8859_1", Type.getType(Charset.class));
+        gen.invokeVirtual(Type.getType(String.class), new Method("getBytes", BYTES, new Type[]{Type.getType(Charset.class)}));
+        gen.invokeVirtual(OUTPUT_STREAM, new Method("write", Type.VOID_TYPE, new Type[]{BYTES}));
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+        main.invokeStatic(this.cls, FLUSH_OUTPUT);
+    }
+
+    /**
+     * Generates {@code readByte()}, which returns the next unsigned byte of input, refilling the buffer when it is
+     * empty, or the eof value once input is exhausted.
+     */
+    private void readByteMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, READ_BYTE, null, null, writer);
+        gen.visitCode();
+
+        Label available = gen.newLabel();
+        gen.getStatic(this.cls, "inputPosition", Type.INT_TYPE);
+        gen.getStatic(this.cls, "inputLimit", Type.INT_TYPE);
+        gen.ifICmp(GeneratorAdapter.LT, available);
+
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        Label start = gen.mark();
+        gen.getStatic(this.cls, "in", INPUT_STREAM);
+        gen.getStatic(this.cls, "inputBuffer", BYTES);
+        gen.push(0);
+        gen.push(BUFFER_SIZE);
+        gen.invokeVirtual(INPUT_STREAM, new Method("read", Type.INT_TYPE, new Type[]{BYTES, Type.INT_TYPE, Type.INT_TYPE}));
+        Label end = gen.mark();
+        gen.push(0);
+        gen.putStatic(this.cls, "inputPosition", Type.INT_TYPE);
+        gen.dup();
+        gen.putStatic(this.cls, "inputLimit", Type.INT_TYPE);
+        gen.ifZCmp(GeneratorAdapter.GT, available);
+        gen.push(0);
+        gen.putStatic(this.cls, "inputLimit", Type.INT_TYPE);
+        gen.push(this.eof);
+        gen.returnValue();
+
+        gen.mark(available);
+        gen.getStatic(this.cls, "inputBuffer", BYTES);
+        gen.getStatic(this.cls, "inputPosition", Type.INT_TYPE);
+        gen.dup();
+        gen.push(1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.putStatic(this.cls, "inputPosition", Type.INT_TYPE);
+        gen.arrayLoad(Type.BYTE_TYPE);
+        gen.push(0xFF);
+        gen.math(GeneratorAdapter.AND, Type.INT_TYPE);
+        gen.returnValue();
+
+        this.rethrow(gen, start, end, "Failed to read input");
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code writeByte(int value)}, which appends the lowest 8 bits of a value to the output buffer, flushing
+     * it first if it is full.
+     */
+    private void writeByteMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, WRITE_BYTE, null, null, writer);
+        gen.visitCode();
+
+        Label room = gen.newLabel();
+        gen.getStatic(this.cls, "outputCount", Type.INT_TYPE);
+        gen.push(BUFFER_SIZE);
+        gen.ifICmp(GeneratorAdapter.LT, room);
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        gen.mark(room);
+
+        gen.getStatic(this.cls, "outputBuffer", BYTES);
+        gen.getStatic(this.cls, "outputCount", Type.INT_TYPE);
+        gen.dup();
+        gen.push(1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.putStatic(this.cls, "outputCount", Type.INT_TYPE);
+        gen.loadArg(0);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+        gen.arrayStore(Type.BYTE_TYPE);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code flushOutput()}, which writes the output buffer to the output stream and empties it.
+     */
+    private void flushOutputMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, FLUSH_OUTPUT, null, null, writer);
+        gen.visitCode();
+
+        Label start = gen.mark();
+        gen.getStatic(this.cls, "out", OUTPUT_STREAM);
+        gen.getStatic(this.cls, "outputBuffer", BYTES);
+        gen.push(0);
+        gen.getStatic(this.cls, "outputCount", Type.INT_TYPE);
+        gen.invokeVirtual(OUTPUT_STREAM, WRITE);
+        Label end = gen.mark();
+        gen.push(0);
+        gen.putStatic(this.cls, "outputCount", Type.INT_TYPE);
+        gen.returnValue();
+
+        this.rethrow(gen, start, end, "Failed to write output");
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    private void rethrow(GeneratorAdapter gen, Label start, Label end, String message) {
+        gen.catchException(start, end, Type.getType(IOException.class));
+        int e = gen.newLocal(Type.getType(IOException.class));
+        gen.storeLocal(e);
+        gen.newInstance(Type.getType(RuntimeException.class));
+        gen.dup();
+        gen.push(message);
+        gen.loadLocal(e);
+        gen.invokeConstructor(Type.getType(RuntimeException.class), new Method("<init>", Type.VOID_TYPE, new Type[]{Type.getType(String.class), Type.getType(Throwable.class)}));
+        gen.throwException();
+    }
+
+}
@@ -22,12 +22,13 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
 
 public class BoundedLongCell implements CellModel {
     private long max;
@@ -39,18 +40,17 @@ public class BoundedLongCell implements CellModel {
     }
 
     @Override
-    public String type() {
-        return "java/lang/Long";
+    public Type valueType() {
+        return Type.LONG_TYPE;
     }
 
     @Override
-    public void initial(ClassWriter writer, MethodVisitor clinit) {
+    public void initial(ClassVisitor writer, MethodVisitor clinit) {
 
     }
 
     @Override
     public void increment(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(1L);
         gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
 
@@ -65,12 +65,10 @@ public class BoundedLongCell implements CellModel {
         gen.pop2();
         gen.push(min);
         gen.mark(end);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void decrement(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(-1L);
         gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
 
@@ -85,12 +83,10 @@ public class BoundedLongCell implements CellModel {
         gen.pop2();
         gen.push(max);
         gen.mark(end);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void toCodepoint(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.cast(Type.LONG_TYPE, Type.INT_TYPE);
     }
 
@@ -120,21 +116,66 @@ public class BoundedLongCell implements CellModel {
         gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
         gen.goTo(start2);
         gen.mark(end2);
-
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void defualtValue(GeneratorAdapter gen) {
         gen.push(0L);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void isZero(GeneratorAdapter gen, Label ifZero) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(0L);
         gen.ifCmp(Type.LONG_TYPE, GeneratorAdapter.EQ, ifZero);
     }
 
-}
\ No newline at end of file
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        long span = this.max - this.min + 1;
+        if (span <= 0 || this.min > 0 || this.max < 0) {
+            //the span overflows, or cells may hold the out-of-range default value; only single steps are exact
+            CellModel.super.add(gen, delta);
+            return;
+        }
+
+        long shift = Math.floorMod((long) delta, span);
+        if (shift == 0) {
+            return;
+        }
+
+        Label wrap = new Label();
+        Label end = new Label();
+
+        gen.dup2();
+        gen.push(this.max - shift);
+        gen.ifCmp(Type.LONG_TYPE, GeneratorAdapter.GT, wrap);
+        gen.push(shift);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+        gen.goTo(end);
+        gen.mark(wrap);
+        gen.push(shift - span);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+        gen.mark(end);
+    }
+
+    @Override
+    public boolean wraps() {
+        //the multiplication in mulAdd cannot overflow for cells within the int range
+        return this.min <= 0 && this.max >= 0 && this.min >= Integer.MIN_VALUE && this.max <= Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int factor) {
+        gen.push((long) factor);
+        gen.math(GeneratorAdapter.MUL, Type.LONG_TYPE);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+
+        gen.push(this.min);
+        gen.math(GeneratorAdapter.SUB, Type.LONG_TYPE);
+        gen.push(this.max - this.min + 1);
+        gen.invokeStatic(Type.getType(Math.class), new Method("floorMod", Type.LONG_TYPE, new Type[]{Type.LONG_TYPE, Type.LONG_TYPE}));
+        gen.push(this.min);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.PrintStream;
+import java.util.function.Consumer;
+
+/**
+ * An {@link IOModel} that takes input from another model, and collects output into a reusable char buffer, which is
+ * printed to {@link System#out} in bulk, in the same charset as output printed a character at a time. The buffer is flushed whenever it is full, at the end of the program, and as
+ * given by the {@link FlushPolicy}.
+ */
+public class BufferedIO implements IOModel, Opcodes {
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final Type CHARS = Type.getType(char[].class);
+    private static final Type STRING = Type.getType(String.class);
+    private static final Type PRINT_STREAM = Type.getType(PrintStream.class);
+    private static final Method WRITE_POINT = new Method("writePoint", Type.VOID_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method FLUSH_OUTPUT = new Method("flushOutput", Type.VOID_TYPE, new Type[0]);
+
+    private IOModel input;
+    private FlushPolicy policy;
+    private Type self;
+
+    public BufferedIO(IOModel input, FlushPolicy policy) {
+        this.input = input;
+        this.policy = policy;
+    }
+
+    @Override
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+        this.self = Type.getObjectType(cls);
+        writer.visitField(ACC_STATIC, "outputBuffer", CHARS.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "outputCount", "I", null, 0).visitEnd();
+
+        clinit.visitIntInsn(SIPUSH, BUFFER_SIZE);
+        clinit.visitIntInsn(NEWARRAY, T_CHAR);
+        clinit.visitFieldInsn(PUTSTATIC, cls, "outputBuffer", CHARS.getDescriptor());
+
+        this.input.initial(cls, writer, clinit);
+        this.writePointMethod(writer);
+        this.flushOutputMethod(writer);
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter main) {
+        this.input.initialMethod(main);
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        if (this.policy == FlushPolicy.INPUT) {
+            gen.invokeStatic(this.self, FLUSH_OUTPUT);
+        }
+        this.input.input(gen);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        getVal.accept(gen);
+        gen.invokeStatic(this.self, WRITE_POINT);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, String text) {
+        gen.invokeStatic(this.self, FLUSH_OUTPUT);
+        gen.getStatic(Type.getType(System.class), "out", PRINT_STREAM);
+        gen.push(text);
+        gen.invokeVirtual(PRINT_STREAM, new Method("print", Type.VOID_TYPE, new Type[]{STRING}));
+        if (this.policy != FlushPolicy.EXIT) {
+            gen.getStatic(Type.getType(System.class), "out", PRINT_STREAM);
+            gen.invokeVirtual(PRINT_STREAM, new Method("flush", Type.VOID_TYPE, new Type[0]));
+        }
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+        main.invokeStatic(this.self, FLUSH_OUTPUT);
+        this.input.end(main);
+    }
+
+    /**
+     * Generates {@code writePoint(int codepoint)}, which appends the UTF-16 encoding of a codepoint to the buffer. Like
+     * {@link String#String(int[], int, int)}, it rejects invalid codepoints, and like {@link PrintStream}, it writes
+     * surrogates as {@code ?}, so that two of them never join into a pair.
+     */
+    private void writePointMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, WRITE_POINT, null, null, writer);
+        gen.visitCode();
+        int count = gen.newLocal(Type.INT_TYPE);
+
+        Label valid = gen.newLabel();
+        Label invalid = gen.newLabel();
+        gen.loadArg(0);
+        gen.ifZCmp(GeneratorAdapter.LT, invalid);
+        gen.loadArg(0);
+        gen.push(Character.MAX_CODE_POINT);
+        gen.ifICmp(GeneratorAdapter.LE, valid);
+        gen.mark(invalid);
+        gen.throwException(Type.getType(IllegalArgumentException.class), "Invalid codepoint");
+        gen.mark(valid);
+
+        //make room for a surrogate pair
+        Label room = gen.newLabel();
+        gen.getStatic(this.self, "outputCount", Type.INT_TYPE);
+        gen.push(BUFFER_SIZE - 2);
+        gen.ifICmp(GeneratorAdapter.LE, room);
+        gen.invokeStatic(this.self, FLUSH_OUTPUT);
+        gen.mark(room);
+        gen.getStatic(this.self, "outputCount", Type.INT_TYPE);
+        gen.storeLocal(count);
+
+        Label notSurrogate = gen.newLabel();
+        gen.loadArg(0);
+        gen.push(Character.MIN_SURROGATE);
+        gen.ifICmp(GeneratorAdapter.LT, notSurrogate);
+        gen.loadArg(0);
+        gen.push(Character.MAX_SURROGATE);
+        gen.ifICmp(GeneratorAdapter.GT, notSurrogate);
+        gen.push('?');
+        gen.storeArg(0);
+        gen.mark(notSurrogate);
+
+        Label pair = gen.newLabel();
+        Label written = gen.newLabel();
+
+        gen.loadArg(0);
+        gen.push(Character.MIN_SUPPLEMENTARY_CODE_POINT);
+        gen.ifICmp(GeneratorAdapter.GE, pair);
+        this.put(gen, count, g -> g.loadArg(0));
+        gen.goTo(written);
+
+        gen.mark(pair);
+        this.put(gen, count, g -> {
+            g.loadArg(0);
+            g.invokeStatic(Type.getType(Character.class), new Method("highSurrogate", Type.CHAR_TYPE, new Type[]{Type.INT_TYPE}));
+        });
+        this.put(gen, count, g -> {
+            g.loadArg(0);
+            g.invokeStatic(Type.getType(Character.class), new Method("lowSurrogate", Type.CHAR_TYPE, new Type[]{Type.INT_TYPE}));
+        });
+
+        gen.mark(written);
+        gen.loadLocal(count);
+        gen.putStatic(this.self, "outputCount", Type.INT_TYPE);
+
+        if (this.policy == FlushPolicy.NEWLINE) {
+            Label end = gen.newLabel();
+            gen.loadArg(0);
+            gen.push('\n');
+            gen.ifICmp(GeneratorAdapter.NE, end);
+            gen.invokeStatic(this.self, FLUSH_OUTPUT);
+            gen.mark(end);
+        }
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Stores the char pushed by {@code getChar} at the {@code count} local, and increments it.
+     */
+    private void put(GeneratorAdapter gen, int count, Consumer<GeneratorAdapter> getChar) {
+        gen.getStatic(this.self, "outputBuffer", CHARS);
+        gen.loadLocal(count);
+        getChar.accept(gen);
+        gen.arrayStore(Type.CHAR_TYPE);
+        gen.iinc(count, 1);
+    }
+
+    /**
+     * Generates {@code flushOutput()}, which prints the buffer to {@link System#out}, in its own charset, and empties it.
+     */
+    private void flushOutputMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, FLUSH_OUTPUT, null, null, writer);
+        gen.visitCode();
+
+        gen.getStatic(Type.getType(System.class), "out", PRINT_STREAM);
+        gen.dup();
+        gen.newInstance(STRING);
+        gen.dup();
+        gen.getStatic(this.self, "outputBuffer", CHARS);
+        gen.push(0);
+        gen.getStatic(this.self, "outputCount", Type.INT_TYPE);
+        gen.invokeConstructor(STRING, new Method("<init>", Type.VOID_TYPE, new Type[]{CHARS, Type.INT_TYPE, Type.INT_TYPE}));
+        gen.invokeVirtual(PRINT_STREAM, new Method("print", Type.VOID_TYPE, new Type[]{STRING}));
+        gen.invokeVirtual(PRINT_STREAM, new Method("flush", Type.VOID_TYPE, new Type[0]));
+        gen.push(0);
+        gen.putStatic(this.self, "outputCount", Type.INT_TYPE);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * When, besides when the buffer is full and at the end of the program, output is flushed.
+     */
+    public enum FlushPolicy {
+        /**
+         * Before each input is read, so that prompts are visible.
+         */
+        INPUT,
+        /**
+         * After each newline is written.
+         */
+        NEWLINE,
+        /**
+         * Never.
+         */
+        EXIT
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+/**
+ * A {@link CellModel} for unsigned, 8-bit, wrapping cells. Cells are stored as JVM bytes, so a cell holding 255 is stored
+ * as -1; wrapping is done by truncating to a byte, and the unsigned value is recovered by masking with {@code 0xFF}.
+ */
+public class ByteCell implements CellModel {
+
+    @Override
+    public Type valueType() {
+        return Type.BYTE_TYPE;
+    }
+
+    @Override
+    public void initial(ClassVisitor writer, MethodVisitor clinit) {
+
+    }
+
+    @Override
+    public void increment(GeneratorAdapter gen) {
+        gen.push(1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+    }
+
+    @Override
+    public void decrement(GeneratorAdapter gen) {
+        gen.push(-1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+    }
+
+    @Override
+    public void toCodepoint(GeneratorAdapter gen) {
+        gen.push(0xFF);
+        gen.math(GeneratorAdapter.AND, Type.INT_TYPE);
+    }
+
+    @Override
+    public void fromCodepoint(GeneratorAdapter gen) {
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+    }
+
+    @Override
+    public void defualtValue(GeneratorAdapter gen) {
+        gen.push(0);
+    }
+
+    @Override
+    public void isZero(GeneratorAdapter gen, Label ifZero) {
+        gen.visitJumpInsn(Opcodes.IFEQ, ifZero);
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        gen.push(delta);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+    }
+
+    @Override
+    public boolean wraps() {
+        return true;
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int factor) {
+        gen.push(factor);
+        gen.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+    }
+
+}
@@ -22,7 +22,7 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -35,51 +35,61 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 public class IntCell implements CellModel {
 
     @Override
-    public String type() {
-        return "java/lang/Integer";
+    public Type valueType() {
+        return Type.INT_TYPE;
     }
 
     @Override
-    public void initial(ClassWriter writer, MethodVisitor clinit) {
+    public void initial(ClassVisitor writer, MethodVisitor clinit) {
 
     }
 
     @Override
     public void increment(GeneratorAdapter gen) {
-        gen.unbox(Type.INT_TYPE);
         gen.push(1);
         gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
-        gen.box(Type.INT_TYPE);
     }
 
     @Override
     public void decrement(GeneratorAdapter gen) {
-        gen.unbox(Type.INT_TYPE);
         gen.push(-1);
         gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
-        gen.box(Type.INT_TYPE);
     }
 
     @Override
     public void toCodepoint(GeneratorAdapter gen) {
-        gen.unbox(Type.INT_TYPE);
     }
 
     @Override
     public void fromCodepoint(GeneratorAdapter gen) {
-        gen.box(Type.INT_TYPE);
     }
 
     @Override
     public void defualtValue(GeneratorAdapter gen) {
         gen.push(0);
-        gen.box(Type.INT_TYPE);
     }
 
     @Override
     public void isZero(GeneratorAdapter gen, Label ifZero) {
-        gen.unbox(Type.INT_TYPE);
         gen.visitJumpInsn(Opcodes.IFEQ, ifZero);
     }
 
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        gen.push(delta);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+    }
+
+    @Override
+    public boolean wraps() {
+        return true;
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int factor) {
+        gen.push(factor);
+        gen.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+    }
+
 }
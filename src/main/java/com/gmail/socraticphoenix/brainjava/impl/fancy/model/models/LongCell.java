@@ -22,7 +22,7 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -32,54 +32,64 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 public class LongCell implements CellModel {
 
     @Override
-    public String type() {
-        return "java/lang/Long";
+    public Type valueType() {
+        return Type.LONG_TYPE;
     }
 
     @Override
-    public void initial(ClassWriter writer, MethodVisitor clinit) {
+    public void initial(ClassVisitor writer, MethodVisitor clinit) {
 
     }
 
     @Override
     public void increment(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(1L);
         gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void decrement(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(-1L);
         gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void toCodepoint(GeneratorAdapter gen) {
-        gen.unbox(Type.LONG_TYPE);
         gen.cast(Type.LONG_TYPE, Type.INT_TYPE);
     }
 
     @Override
     public void fromCodepoint(GeneratorAdapter gen) {
         gen.cast(Type.INT_TYPE, Type.LONG_TYPE);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void defualtValue(GeneratorAdapter gen) {
         gen.push(0L);
-        gen.box(Type.LONG_TYPE);
     }
 
     @Override
     public void isZero(GeneratorAdapter gen, Label ifZero) {
-        gen.unbox(Type.LONG_TYPE);
         gen.push(0L);
         gen.ifCmp(Type.LONG_TYPE, GeneratorAdapter.EQ, ifZero);
     }
 
-}
\ No newline at end of file
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        gen.push((long) delta);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+    }
+
+    @Override
+    public boolean wraps() {
+        return true;
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int factor) {
+        gen.push((long) factor);
+        gen.math(GeneratorAdapter.MUL, Type.LONG_TYPE);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * An {@link IOModel} which treats IO as raw bytes, read from and written to files given as the first two arguments of
+ * the program. The input file is memory mapped, in windows of at most {@link #WINDOW_SIZE} bytes, and read by position.
+ * Output is collected in a direct buffer, which is written to the output file's channel when full and at the end of the
+ * program. Output values are truncated to their lowest 8 bits.
+ */
+public class MappedIO implements IOModel, Opcodes {
+    public static final long WINDOW_SIZE = 1 << 30;
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private static final Type BYTES = Type.getType(byte[].class);
+    private static final Type BYTE_BUFFER = Type.getType(ByteBuffer.class);
+    private static final Type BUFFER = Type.getType(Buffer.class);
+    private static final Type FILE_CHANNEL = Type.getType(FileChannel.class);
+    private static final Type MAP_MODE = Type.getType(FileChannel.MapMode.class);
+    private static final Type OPTION = Type.getType(StandardOpenOption.class);
+    private static final Method OPEN_FILES = new Method("openFiles", Type.VOID_TYPE, new Type[]{Type.getType(String[].class)});
+    private static final Method MAP_INPUT = new Method("mapInput", Type.VOID_TYPE, new Type[]{Type.LONG_TYPE});
+    private static final Method READ_BYTE = new Method("readByte", Type.INT_TYPE, new Type[0]);
+    private static final Method WRITE_BYTE = new Method("writeByte", Type.VOID_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method WRITE_BYTES = new Method("writeBytes", Type.VOID_TYPE, new Type[]{BYTES});
+    private static final Method FLUSH_OUTPUT = new Method("flushOutput", Type.VOID_TYPE, new Type[0]);
+    private static final Method CLOSE_FILES = new Method("closeFiles", Type.VOID_TYPE, new Type[0]);
+    private static final Method HAS_REMAINING = new Method("hasRemaining", Type.BOOLEAN_TYPE, new Type[0]);
+
+    private Type cls;
+    private int eof;
+
+    public MappedIO(int eof) {
+        this.eof = eof;
+    }
+
+    @Override
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+        this.cls = Type.getObjectType(cls);
+        writer.visitField(ACC_STATIC, "inputChannel", FILE_CHANNEL.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "inputMap", BYTE_BUFFER.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "inputOffset", "J", null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "inputSize", "J", null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "outputChannel", FILE_CHANNEL.getDescriptor(), null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "outputBuffer", BYTE_BUFFER.getDescriptor(), null, null).visitEnd();
+
+        this.openFilesMethod(writer);
+        this.mapInputMethod(writer);
+        this.readByteMethod(writer);
+        this.writeByteMethod(writer);
+        this.writeBytesMethod(writer);
+        this.flushOutputMethod(writer);
+        this.closeFilesMethod(writer);
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter main) {
+        main.loadArg(0);
+        main.invokeStatic(this.cls, OPEN_FILES);
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        gen.invokeStatic(this.cls, READ_BYTE);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        getVal.accept(gen);
+        gen.invokeStatic(this.cls, WRITE_BYTE);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, String text) {
+        StringBuilder bytes = new StringBuilder();
+        text.codePoints().forEach(c -> bytes.append((char) (c & 0xFF)));
+
+        gen.push(bytes.toString());
+        gen.getStatic(Type.getType(StandardCharsets.class), "ISO_8859_1", Type.getType(Charset.class));
+        gen.invokeVirtual(Type.getType(String.class), new Method("getBytes", BYTES, new Type[]{Type.getType(Charset.class)}));
+        gen.invokeStatic(this.cls, WRITE_BYTES);
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+        main.invokeStatic(this.cls, CLOSE_FILES);
+    }
+
+    /**
+     * Generates {@code openFiles(String[] args)}, which opens and maps the input file, and opens the output file.
+     */
+    private void openFilesMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, OPEN_FILES);
+
+        Label enough = gen.newLabel();
+        gen.loadArg(0);
+        gen.arrayLength();
+        gen.push(2);
+        gen.ifICmp(GeneratorAdapter.GE, enough);
+        gen.throwException(Type.getType(IllegalArgumentException.class), "Expected args of the form <input file> <output file>");
+        gen.mark(enough);
+
+        this.open(gen, 0, "READ");
+        gen.dup();
+        gen.putStatic(this.cls, "inputChannel", FILE_CHANNEL);
+        gen.invokeVirtual(FILE_CHANNEL, new Method("size", Type.LONG_TYPE, new Type[0]));
+        gen.putStatic(this.cls, "inputSize", Type.LONG_TYPE);
+        gen.push(0L);
+        gen.invokeStatic(this.cls, MAP_INPUT);
+
+        this.open(gen, 1, "WRITE", "CREATE", "TRUNCATE_EXISTING");
+        gen.putStatic(this.cls, "outputChannel", FILE_CHANNEL);
+        gen.push(BUFFER_SIZE);
+        gen.invokeStatic(BYTE_BUFFER, new Method("allocateDirect", BYTE_BUFFER, new Type[]{Type.INT_TYPE}));
+        gen.putStatic(this.cls, "outputBuffer", BYTE_BUFFER);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    private void open(GeneratorAdapter gen, int arg, String... options) {
+        gen.newInstance(Type.getType(File.class));
+        gen.dup();
+        gen.loadArg(0);
+        gen.push(arg);
+        gen.arrayLoad(Type.getType(String.class));
+        gen.invokeConstructor(Type.getType(File.class), new Method("<init>", Type.VOID_TYPE, new Type[]{Type.getType(String.class)}));
+        gen.invokeVirtual(Type.getType(File.class), new Method("toPath", Type.getType(Path.class), new Type[0]));
+
+        gen.push(options.length);
+        gen.newArray(Type.getType(OpenOption.class));
+        for (int i = 0; i < options.length; i++) {
+            gen.dup();
+            gen.push(i);
+            gen.getStatic(OPTION, options[i], OPTION);
+            gen.arrayStore(Type.getType(OpenOption.class));
+        }
+        gen.invokeStatic(FILE_CHANNEL, new Method("open", FILE_CHANNEL, new Type[]{Type.getType(Path.class), Type.getType(OpenOption[].class)}));
+    }
+
+    /**
+     * Generates {@code mapInput(long offset)}, which maps the window of the input file starting at the given offset.
+     */
+    private void mapInputMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, MAP_INPUT);
+
+        gen.loadArg(0);
+        gen.putStatic(this.cls, "inputOffset", Type.LONG_TYPE);
+        gen.getStatic(this.cls, "inputChannel", FILE_CHANNEL);
+        gen.getStatic(MAP_MODE, "READ_ONLY", MAP_MODE);
+        gen.loadArg(0);
+        gen.getStatic(this.cls, "inputSize", Type.LONG_TYPE);
+        gen.loadArg(0);
+        gen.math(GeneratorAdapter.SUB, Type.LONG_TYPE);
+        gen.push(WINDOW_SIZE);
+        gen.invokeStatic(Type.getType(Math.class), new Method("min", Type.LONG_TYPE, new Type[]{Type.LONG_TYPE, Type.LONG_TYPE}));
+        gen.invokeVirtual(FILE_CHANNEL, new Method("map", Type.getType(MappedByteBuffer.class), new Type[]{MAP_MODE, Type.LONG_TYPE, Type.LONG_TYPE}));
+        gen.putStatic(this.cls, "inputMap", BYTE_BUFFER);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code readByte()}, which returns the next unsigned byte of input, mapping the next window when the
+     * current one is exhausted, or the eof value once the whole file is read.
+     */
+    private void readByteMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, READ_BYTE);
+        int next = gen.newLocal(Type.LONG_TYPE);
+
+        Label available = gen.newLabel();
+        gen.getStatic(this.cls, "inputMap", BYTE_BUFFER);
+        gen.invokeVirtual(BUFFER, HAS_REMAINING);
+        gen.ifZCmp(GeneratorAdapter.NE, available);
+
+        Label more = gen.newLabel();
+        gen.getStatic(this.cls, "inputOffset", Type.LONG_TYPE);
+        gen.getStatic(this.cls, "inputMap", BYTE_BUFFER);
+        gen.invokeVirtual(BUFFER, new Method("capacity", Type.INT_TYPE, new Type[0]));
+        gen.cast(Type.INT_TYPE, Type.LONG_TYPE);
+        gen.math(GeneratorAdapter.ADD, Type.LONG_TYPE);
+        gen.storeLocal(next);
+        gen.loadLocal(next);
+        gen.getStatic(this.cls, "inputSize", Type.LONG_TYPE);
+        gen.ifCmp(Type.LONG_TYPE, GeneratorAdapter.LT, more);
+        gen.push(this.eof);
+        gen.returnValue();
+        gen.mark(more);
+        gen.loadLocal(next);
+        gen.invokeStatic(this.cls, MAP_INPUT);
+
+        gen.mark(available);
+        gen.getStatic(this.cls, "inputMap", BYTE_BUFFER);
+        gen.invokeVirtual(BYTE_BUFFER, new Method("get", Type.BYTE_TYPE, new Type[0]));
+        gen.push(0xFF);
+        gen.math(GeneratorAdapter.AND, Type.INT_TYPE);
+        gen.returnValue();
+
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code writeByte(int value)}, which appends the lowest 8 bits of a value to the output buffer, flushing
+     * it first if it is full.
+     */
+    private void writeByteMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, WRITE_BYTE);
+
+        Label room = gen.newLabel();
+        gen.getStatic(this.cls, "outputBuffer", BYTE_BUFFER);
+        gen.invokeVirtual(BUFFER, HAS_REMAINING);
+        gen.ifZCmp(GeneratorAdapter.NE, room);
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        gen.mark(room);
+
+        gen.getStatic(this.cls, "outputBuffer", BYTE_BUFFER);
+        gen.loadArg(0);
+        gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+        gen.invokeVirtual(BYTE_BUFFER, new Method("put", BYTE_BUFFER, new Type[]{Type.BYTE_TYPE}));
+        gen.pop();
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code writeBytes(byte[] bytes)}, which flushes the output buffer, and writes the given bytes directly.
+     */
+    private void writeBytesMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, WRITE_BYTES);
+        int buffer = gen.newLocal(BYTE_BUFFER);
+
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        gen.loadArg(0);
+        gen.invokeStatic(BYTE_BUFFER, new Method("wrap", BYTE_BUFFER, new Type[]{BYTES}));
+        gen.storeLocal(buffer);
+        this.drain(gen, buffer);
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    /**
+     * Generates {@code flushOutput()}, which writes the output buffer to the output channel and empties it.
+     */
+    private void flushOutputMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, FLUSH_OUTPUT);
+        int buffer = gen.newLocal(BYTE_BUFFER);
+
+        gen.getStatic(this.cls, "outputBuffer", BYTE_BUFFER);
+        gen.storeLocal(buffer);
+        gen.loadLocal(buffer);
+        gen.invokeVirtual(BUFFER, new Method("flip", BUFFER, new Type[0]));
+        gen.pop();
+        this.drain(gen, buffer);
+        gen.loadLocal(buffer);
+        gen.invokeVirtual(BUFFER, new Method("clear", BUFFER, new Type[0]));
+        gen.pop();
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    private void drain(GeneratorAdapter gen, int buffer) {
+        Label start = gen.newLabel();
+        Label end = gen.newLabel();
+        gen.mark(start);
+        gen.loadLocal(buffer);
+        gen.invokeVirtual(BUFFER, HAS_REMAINING);
+        gen.ifZCmp(GeneratorAdapter.EQ, end);
+        gen.getStatic(this.cls, "outputChannel", FILE_CHANNEL);
+        gen.loadLocal(buffer);
+        gen.invokeVirtual(FILE_CHANNEL, new Method("write", Type.INT_TYPE, new Type[]{BYTE_BUFFER}));
+        gen.pop();
+        gen.goTo(start);
+        gen.mark(end);
+    }
+
+    /**
+     * Generates {@code closeFiles()}, which flushes the output buffer, and closes both files.
+     */
+    private void closeFilesMethod(ClassVisitor writer) {
+        GeneratorAdapter gen = this.method(writer, CLOSE_FILES);
+
+        gen.invokeStatic(this.cls, FLUSH_OUTPUT);
+        gen.getStatic(this.cls, "outputChannel", FILE_CHANNEL);
+        gen.invokeVirtual(FILE_CHANNEL, new Method("close", Type.VOID_TYPE, new Type[0]));
+        gen.getStatic(this.cls, "inputChannel", FILE_CHANNEL);
+        gen.invokeVirtual(FILE_CHANNEL, new Method("close", Type.VOID_TYPE, new Type[0]));
+
+        gen.returnValue();
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+    }
+
+    private GeneratorAdapter method(ClassVisitor writer, Method method) {
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC, method, null, new Type[]{Type.getType(IOException.class)}, writer);
+        gen.visitCode();
+        return gen;
+    }
+
+}
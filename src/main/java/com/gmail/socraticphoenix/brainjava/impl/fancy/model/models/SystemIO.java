@@ -22,7 +22,7 @@
 package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -46,9 +46,9 @@ public class SystemIO implements IOModel, Opcodes {
     }
 
     @Override
-    public void initial(String cls, ClassWriter writer, MethodVisitor clinit) {
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
         this.cls = Type.getObjectType(cls);
-        writer.visitField(ACC_PRIVATE | ACC_STATIC, "in", "Ljava/io/Reader;", null, null).visitEnd();
+        writer.visitField(ACC_STATIC, "in", "Ljava/io/Reader;", null, null).visitEnd();
 
         clinit.visitTypeInsn(NEW, "java/io/BufferedReader");
         clinit.visitInsn(DUP);
@@ -180,6 +180,13 @@ public class SystemIO implements IOModel, Opcodes {
         gen.invokeVirtual(Type.getType(PrintStream.class), new Method("print", Type.VOID_TYPE, new Type[]{Type.getType(String.class)}));
     }
 
+    @Override
+    public void output(GeneratorAdapter gen, String text) {
+        gen.getStatic(Type.getType(System.class), "out", Type.getType(PrintStream.class));
+        gen.push(text);
+        gen.invokeVirtual(Type.getType(PrintStream.class), new Method("print", Type.VOID_TYPE, new Type[]{Type.getType(String.class)}));
+    }
+
     @Override
     public void end(GeneratorAdapter main) {
         main.getStatic(this.cls, "in", Type.getType(Reader.class));
@@ -24,7 +24,7 @@ package com.gmail.socraticphoenix.brainjava.impl.fancy.model.models;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
 import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -46,6 +46,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
 
     private Type self;
     private Type list;
+    private Type boxed;
 
     public UnboundedTape(String cls, CellModel cell, IOModel input) {
         this.cell = cell;
@@ -53,6 +54,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         this.cls = cls;
         this.self = Type.getObjectType(cls);
         this.list = Type.getType(List.class);
+        this.boxed = CellModel.boxed(cell.valueType());
     }
 
     @Override
@@ -66,10 +68,10 @@ public class UnboundedTape implements TapeModel, Opcodes {
     }
 
     @Override
-    public void initial(ClassWriter writer) {
-        writer.visitField(ACC_PRIVATE | ACC_STATIC, "pointer", "I", null, 0).visitEnd();
-        writer.visitField(ACC_PRIVATE | ACC_STATIC, "leftTape", "Ljava/util/List;", "Ljava/util/List<L" + this.cell.type() + ";>;", null).visitEnd();
-        writer.visitField(ACC_PRIVATE | ACC_STATIC, "rightTape", "Ljava/util/List;", "Ljava/util/List<L" + this.cell.type() + ";>;", null).visitEnd();
+    public void initial(ClassVisitor writer) {
+        writer.visitField(ACC_STATIC, "pointer", "I", null, 0).visitEnd();
+        writer.visitField(ACC_STATIC, "leftTape", "Ljava/util/List;", "Ljava/util/List<" + this.boxed.getDescriptor() + ">;", null).visitEnd();
+        writer.visitField(ACC_STATIC, "rightTape", "Ljava/util/List;", "Ljava/util/List<" + this.boxed.getDescriptor() + ">;", null).visitEnd();
 
         MethodVisitor clinit = writer.visitMethod(ACC_STATIC | ACC_PUBLIC, "<clinit>", "()V", null, null);
         clinit.visitCode();
@@ -95,11 +97,13 @@ public class UnboundedTape implements TapeModel, Opcodes {
     public void initialMethod(GeneratorAdapter gen) {
         gen.getStatic(this.self, "leftTape", this.list);
         this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
         gen.pop();
 
         gen.getStatic(this.self, "rightTape", this.list);
         this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
         gen.pop();
 
@@ -161,6 +165,29 @@ public class UnboundedTape implements TapeModel, Opcodes {
         this.input.end(main);
     }
 
+    @Override
+    public void move(GeneratorAdapter gen, int delta) {
+        if (Math.abs(delta) <= 1) {
+            TapeModel.super.move(gen, delta);
+            return;
+        }
+
+        //moving in one step, rather than delta steps, keeps the code the same size however far the pointer moves
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.push(delta);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.putStatic(this.self, "pointer", Type.INT_TYPE);
+        fill(gen);
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        set(gen, g -> {
+            get(g);
+            this.cell.add(g, delta);
+        });
+    }
+
     @Override
     public void get(GeneratorAdapter gen) {
         gen.getStatic(this.self, "pointer", Type.INT_TYPE);
@@ -173,7 +200,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.getStatic(this.self, "rightTape", this.list);
         gen.getStatic(this.self, "pointer", Type.INT_TYPE);
         gen.invokeInterface(this.list, new Method("get", Type.getType(Object.class), new Type[]{Type.INT_TYPE}));
-        gen.checkCast(Type.getObjectType(this.cell.type()));
+        gen.unbox(this.cell.valueType());
         gen.goTo(end);
         gen.mark(left);
 
@@ -183,11 +210,12 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.push(-1);
         gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
         gen.invokeInterface(this.list, new Method("get", Type.getType(Object.class), new Type[]{Type.INT_TYPE}));
-        gen.checkCast(Type.getObjectType(this.cell.type()));
+        gen.unbox(this.cell.valueType());
         gen.mark(end);
     }
 
-    private void set(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+    @Override
+    public void set(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
         gen.getStatic(this.self, "pointer", Type.INT_TYPE);
 
         Label left = gen.newLabel();
@@ -197,6 +225,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.getStatic(this.self, "rightTape", this.list);
         gen.getStatic(this.self, "pointer", Type.INT_TYPE);
         getVal.accept(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("set", Type.getType(Object.class), new Type[]{Type.INT_TYPE, Type.getType(Object.class)}));
         gen.pop();
         gen.goTo(end);
@@ -208,6 +237,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.visitInsn(ICONST_M1);
         gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
         getVal.accept(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("set", Type.getType(Object.class), new Type[]{Type.INT_TYPE, Type.getType(Object.class)}));
         gen.pop();
         gen.mark(end);
@@ -229,6 +259,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.ifICmp(GeneratorAdapter.GT, endTest1);
         gen.getStatic(this.self, "rightTape", this.list);
         this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
         gen.pop();
 
@@ -247,6 +278,7 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.ifICmp(GeneratorAdapter.GT, endTest1);
         gen.getStatic(this.self, "leftTape", this.list);
         this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
         gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
         gen.pop();
 
@@ -254,4 +286,46 @@ public class UnboundedTape implements TapeModel, Opcodes {
         gen.mark(end);
     }
 
+    /**
+     * Grows the side of the tape the pointer is on until it reaches the pointer, which may have moved any number of cells
+     * past its end.
+     */
+    private void fill(GeneratorAdapter gen) {
+        Label right = gen.newLabel();
+        Label left = gen.newLabel();
+        Label end = gen.newLabel();
+
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.ifZCmp(GeneratorAdapter.LT, left);
+
+        gen.mark(right);
+        gen.getStatic(this.self, "rightTape", this.list);
+        gen.invokeInterface(this.list, new Method("size", Type.INT_TYPE, new Type[]{}));
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.ifICmp(GeneratorAdapter.GT, end);
+        gen.getStatic(this.self, "rightTape", this.list);
+        this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
+        gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
+        gen.pop();
+        gen.goTo(right);
+
+        gen.mark(left);
+        gen.getStatic(this.self, "leftTape", this.list);
+        gen.invokeInterface(this.list, new Method("size", Type.INT_TYPE, new Type[]{}));
+        gen.getStatic(this.self, "pointer", Type.INT_TYPE);
+        gen.math(GeneratorAdapter.NEG, Type.INT_TYPE);
+        gen.push(-1);
+        gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        gen.ifICmp(GeneratorAdapter.GT, end);
+        gen.getStatic(this.self, "leftTape", this.list);
+        this.cell.defualtValue(gen);
+        gen.box(this.cell.valueType());
+        gen.invokeInterface(this.list, new Method("add", Type.BOOLEAN_TYPE, new Type[]{Type.getType(Object.class)}));
+        gen.pop();
+        gen.goTo(left);
+
+        gen.mark(end);
+    }
+
 }
@@ -0,0 +1,453 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.handles;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckVisitor;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.TapeState;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Builds a program as a tree of method handles over a {@link TapeState}, rather than as a class, for environments that
+ * forbid defining classes at runtime. Each operation is a small static method with its constants bound, and sequences
+ * are folded together. Loops use a combinator that runs the body handle in a plain Java loop, or, if requested and on
+ * Java 9 or later, {@code MethodHandles.whileLoop}. Since the program's root handle is not a constant the JIT can fold,
+ * the combinator is the faster of the two.
+ * <p>
+ * Cells hold their logical values as longs, with the arithmetic of a {@link CellRange}, as an
+ * {@link com.gmail.socraticphoenix.brainjava.impl.interpreter.Interpreter} does.
+ */
+public class MethodHandleCompiler implements BrainfuckVisitor {
+    private static final MethodType OP = MethodType.methodType(void.class, TapeState.class);
+
+    private static final int LONG = 0;
+    private static final int INT = 1;
+    private static final int BYTE = 2;
+    private static final int BOUNDED = 3;
+
+    private static final MethodHandle NOP;
+    private static final MethodHandle ADD;
+    private static final MethodHandle MOVE;
+    private static final MethodHandle INPUT;
+    private static final MethodHandle OUTPUT;
+    private static final MethodHandle ZERO;
+    private static final MethodHandle MUL_ADD;
+    private static final MethodHandle SCAN;
+    private static final MethodHandle RESERVE;
+    private static final MethodHandle TEXT;
+    private static final MethodHandle PRESET;
+    private static final MethodHandle NON_ZERO;
+    private static final MethodHandle LOOP;
+    private static final Method WHILE_LOOP;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            NOP = lookup.findStatic(MethodHandleCompiler.class, "nop", OP);
+            ADD = lookup.findStatic(MethodHandleCompiler.class, "add", OP.appendParameterTypes(int.class, int.class, int.class, CellRange.class));
+            MOVE = lookup.findStatic(MethodHandleCompiler.class, "move", OP.appendParameterTypes(int.class));
+            INPUT = lookup.findStatic(MethodHandleCompiler.class, "input", OP.appendParameterTypes(int.class, CellRange.class));
+            OUTPUT = lookup.findStatic(MethodHandleCompiler.class, "output", OP.appendParameterTypes(int.class));
+            ZERO = lookup.findStatic(MethodHandleCompiler.class, "zero", OP.appendParameterTypes(int.class));
+            MUL_ADD = lookup.findStatic(MethodHandleCompiler.class, "mulAdd", OP.appendParameterTypes(int.class, int[].class, int[].class, int.class, CellRange.class));
+            SCAN = lookup.findStatic(MethodHandleCompiler.class, "scan", OP.appendParameterTypes(int.class));
+            RESERVE = lookup.findStatic(MethodHandleCompiler.class, "reserve", OP.appendParameterTypes(int.class, int.class));
+            TEXT = lookup.findStatic(MethodHandleCompiler.class, "text", OP.appendParameterTypes(String.class));
+            PRESET = lookup.findStatic(MethodHandleCompiler.class, "preset", OP.appendParameterTypes(long[].class, int.class));
+            NON_ZERO = lookup.findStatic(MethodHandleCompiler.class, "nonZero", MethodType.methodType(boolean.class, TapeState.class));
+            LOOP = lookup.findStatic(MethodHandleCompiler.class, "loop", MethodType.methodType(void.class, MethodHandle.class, TapeState.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+
+        Method whileLoop = null;
+        try {
+            whileLoop = MethodHandles.class.getMethod("whileLoop", MethodHandle.class, MethodHandle.class, MethodHandle.class);
+        } catch (NoSuchMethodException e) {
+            //MethodHandles.whileLoop needs Java 9
+        }
+        WHILE_LOOP = whileLoop;
+    }
+
+    private CellRange range;
+    private boolean whileLoops;
+    private int arithmetic;
+    private Stack<List<MethodHandle>> sequences;
+    private MethodHandle program;
+
+    public MethodHandleCompiler(CellRange range) {
+        this(range, false);
+    }
+
+    /**
+     * Creates a new compiler. If {@code whileLoops} is true and {@code MethodHandles.whileLoop} exists, loops are built
+     * with it, rather than with the combinator.
+     *
+     * @param range The values the cells hold.
+     * @param whileLoops Whether to build loops with {@code MethodHandles.whileLoop}.
+     */
+    public MethodHandleCompiler(CellRange range, boolean whileLoops) {
+        this.range = range;
+        this.whileLoops = whileLoops && WHILE_LOOP != null;
+        this.sequences = new Stack<>();
+        if (range.getMin() == Long.MIN_VALUE && range.getMax() == Long.MAX_VALUE) {
+            this.arithmetic = LONG;
+        } else if (range.getMin() == Integer.MIN_VALUE && range.getMax() == Integer.MAX_VALUE) {
+            this.arithmetic = INT;
+        } else if (range.getMin() == 0 && range.getMax() == 255) {
+            this.arithmetic = BYTE;
+        } else {
+            this.arithmetic = BOUNDED;
+        }
+    }
+
+    /**
+     * Builds a program out of method handles.
+     *
+     * @param program The source of the program.
+     * @param range The values the cells hold.
+     * @param passes The passes to apply to the program.
+     * @return The built program.
+     * @throws BrainfuckCompilationException If the program fails to parse.
+     */
+    public static MethodHandleProgram compile(String program, CellRange range, BrainfuckPassManager passes) throws BrainfuckCompilationException {
+        MethodHandleCompiler compiler = new MethodHandleCompiler(range);
+        BrainfuckCompiler.compile(program, compiler, passes);
+        return compiler.getProgram();
+    }
+
+    /**
+     * @return Whether loops are built with {@code MethodHandles.whileLoop}, rather than the combinator.
+     */
+    public boolean whileLoops() {
+        return this.whileLoops;
+    }
+
+    /**
+     * @return The built program, once the whole program has been visited.
+     */
+    public MethodHandleProgram getProgram() {
+        if (this.program == null) {
+            throw new IllegalStateException("The program has not been fully visited");
+        }
+        return new MethodHandleProgram(this.program);
+    }
+
+    private void emit(MethodHandle op, Object... constants) {
+        this.sequences.peek().add(MethodHandles.insertArguments(op, 1, constants));
+    }
+
+    @Override
+    public void visitStart() throws BrainfuckCompilationException {
+        this.sequences.push(new ArrayList<>());
+    }
+
+    @Override
+    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
+        return this;
+    }
+
+    @Override
+    public void visitAdvance(Node node) throws BrainfuckCompilationException {
+        this.emit(MOVE, 1);
+    }
+
+    @Override
+    public void visitRetreat(Node node) throws BrainfuckCompilationException {
+        this.emit(MOVE, -1);
+    }
+
+    @Override
+    public void visitIncrement(Node node) throws BrainfuckCompilationException {
+        this.emit(ADD, 0, 1, this.arithmetic, this.range);
+    }
+
+    @Override
+    public void visitDecrement(Node node) throws BrainfuckCompilationException {
+        this.emit(ADD, 0, -1, this.arithmetic, this.range);
+    }
+
+    @Override
+    public void visitInput(Node node) throws BrainfuckCompilationException {
+        this.emit(INPUT, 0, this.range);
+    }
+
+    @Override
+    public void visitOutput(Node node) throws BrainfuckCompilationException {
+        this.emit(OUTPUT, 0);
+    }
+
+    @Override
+    public void visitAdd(AddNode node) throws BrainfuckCompilationException {
+        this.emit(ADD, 0, node.getDelta(), this.arithmetic, this.range);
+    }
+
+    @Override
+    public void visitMove(MoveNode node) throws BrainfuckCompilationException {
+        this.emit(MOVE, node.getDelta());
+    }
+
+    @Override
+    public void visitSetZero(SetZeroNode node) throws BrainfuckCompilationException {
+        if (this.range.wraps()) {
+            this.emit(ZERO, 0);
+        } else {
+            BrainfuckVisitor.super.visitSetZero(node);
+        }
+    }
+
+    @Override
+    public void visitMulAdd(MulAddNode node) throws BrainfuckCompilationException {
+        if (this.range.wraps()) {
+            int min = 0;
+            int max = 0;
+            for (int offset : node.getOffsets()) {
+                min = Math.min(min, offset);
+                max = Math.max(max, offset);
+            }
+            this.emit(RESERVE, min, max);
+            this.emit(MUL_ADD, 0, node.getOffsets(), node.getFactors(), this.arithmetic, this.range);
+        } else {
+            BrainfuckVisitor.super.visitMulAdd(node);
+        }
+    }
+
+    @Override
+    public void visitScan(ScanNode node) throws BrainfuckCompilationException {
+        this.emit(SCAN, node.getStride());
+    }
+
+    @Override
+    public void visitBlock(BlockNode node) throws BrainfuckCompilationException {
+        for (Node op : node.getNodes()) {
+            if ((op.kind() == Kind.SET_ZERO || op.kind() == Kind.MUL_ADD) && !this.range.wraps()) {
+                BrainfuckVisitor.super.visitBlock(node);
+                return;
+            }
+        }
+
+        this.emit(RESERVE, node.getMin(), node.getMax());
+        for (int i = 0; i < node.getOffsets().length; i++) {
+            Node op = node.getNodes().get(i);
+            int offset = node.getOffsets()[i];
+            switch (op.kind()) {
+                case ADD:
+                    this.emit(ADD, offset, ((AddNode) op).getDelta(), this.arithmetic, this.range);
+                    break;
+                case INPUT:
+                    this.emit(INPUT, offset, this.range);
+                    break;
+                case OUTPUT:
+                    this.emit(OUTPUT, offset);
+                    break;
+                case SET_ZERO:
+                    this.emit(ZERO, offset);
+                    break;
+                case MUL_ADD:
+                    MulAddNode mulAdd = (MulAddNode) op;
+                    this.emit(MUL_ADD, offset, mulAdd.getOffsets(), mulAdd.getFactors(), this.arithmetic, this.range);
+                    break;
+            }
+        }
+        if (node.getShift() != 0) {
+            this.emit(MOVE, node.getShift());
+        }
+    }
+
+    @Override
+    public void visitPrefix(PrefixNode node) throws BrainfuckCompilationException {
+        if (!node.getOutput().isEmpty()) {
+            this.emit(TEXT, node.getOutput());
+        }
+        if (node.getCells().length > 0) {
+            this.emit(PRESET, node.getCells(), node.getOffset());
+        }
+        if (node.getPointer() != 0) {
+            this.emit(MOVE, node.getPointer());
+        }
+    }
+
+    @Override
+    public void visitEnd() throws BrainfuckCompilationException {
+        MethodHandle body = sequence(this.sequences.pop(), 0, -1);
+        if (this.sequences.isEmpty()) {
+            this.program = body;
+        } else {
+            this.sequences.peek().add(this.loop(body));
+        }
+    }
+
+    /**
+     * @return A handle running {@code ops} from {@code start} to {@code end}, or to the last if {@code end} is negative,
+     * in order. The sequence is split in halves, so that handles are nested logarithmically deep.
+     */
+    private static MethodHandle sequence(List<MethodHandle> ops, int start, int end) {
+        if (end < 0) {
+            end = ops.size();
+        }
+        if (start == end) {
+            return NOP;
+        } else if (end - start == 1) {
+            return ops.get(start);
+        }
+        int middle = (start + end) >>> 1;
+        return MethodHandles.foldArguments(sequence(ops, middle, end), sequence(ops, start, middle));
+    }
+
+    /**
+     * @return A handle running {@code body} for as long as the current cell is non-zero.
+     */
+    private MethodHandle loop(MethodHandle body) {
+        if (this.whileLoops) {
+            try {
+                return (MethodHandle) WHILE_LOOP.invoke(null, null, NON_ZERO, body);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to build loop", e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Failed to build loop", e.getCause());
+            }
+        }
+        return LOOP.bindTo(body);
+    }
+
+    private static void nop(TapeState state) {
+
+    }
+
+    private static void add(TapeState state, int offset, int delta, int arithmetic, CellRange range) {
+        int index = state.pointer + offset;
+        long value = state.tape[index] + delta;
+        switch (arithmetic) {
+            case INT:
+                value = (int) value;
+                break;
+            case BYTE:
+                value &= 0xFF;
+                break;
+            case BOUNDED:
+                value = range.add(state.tape[index], delta);
+                break;
+        }
+        state.tape[index] = value;
+    }
+
+    private static void move(TapeState state, int delta) {
+        state.pointer += delta;
+        if (state.pointer < 0 || state.pointer >= state.tape.length) {
+            state.widen(0, 0);
+        }
+    }
+
+    private static void input(TapeState state, int offset, CellRange range) throws IOException {
+        state.tape[state.pointer + offset] = range.fromCodepoint(state.io.read());
+    }
+
+    private static void output(TapeState state, int offset) throws IOException {
+        state.io.write((int) state.tape[state.pointer + offset]);
+    }
+
+    private static void zero(TapeState state, int offset) {
+        state.tape[state.pointer + offset] = 0;
+    }
+
+    private static void mulAdd(TapeState state, int offset, int[] offsets, int[] factors, int arithmetic, CellRange range) {
+        long[] tape = state.tape;
+        int index = state.pointer + offset;
+        long counter = tape[index];
+        if (counter == 0) {
+            return;
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            int target = index + offsets[i];
+            long value = tape[target] + counter * factors[i];
+            switch (arithmetic) {
+                case INT:
+                    value = (int) value;
+                    break;
+                case BYTE:
+                    value &= 0xFF;
+                    break;
+                case BOUNDED:
+                    value = range.mulAdd(tape[target], counter, factors[i]);
+                    break;
+            }
+            tape[target] = value;
+        }
+        tape[index] = 0;
+    }
+
+    private static void scan(TapeState state, int stride) {
+        while (state.tape[state.pointer] != 0) {
+            move(state, stride);
+        }
+    }
+
+    private static void reserve(TapeState state, int min, int max) {
+        state.widen(min, max);
+    }
+
+    private static void text(TapeState state, String text) throws IOException {
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            state.io.write(c);
+            i += Character.charCount(c);
+        }
+    }
+
+    private static void preset(TapeState state, long[] cells, int offset) {
+        state.widen(offset, offset + cells.length - 1);
+        System.arraycopy(cells, 0, state.tape, state.pointer + offset, cells.length);
+    }
+
+    private static boolean nonZero(TapeState state) {
+        return state.tape[state.pointer] != 0;
+    }
+
+    private static void loop(MethodHandle body, TapeState state) throws Throwable {
+        while (state.tape[state.pointer] != 0) {
+            body.invokeExact(state);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.handles;
+
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.Interpreter;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.InterpreterIO;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.TapeState;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A program built by a {@link MethodHandleCompiler}, as a single method handle of type {@code (TapeState)void}. It holds
+ * no state of its own, and may run on several threads at once.
+ */
+public class MethodHandleProgram {
+    private MethodHandle handle;
+
+    public MethodHandleProgram(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Runs the program on a new tape, and flushes {@code io} when it ends.
+     *
+     * @param io The input and output of the program.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(InterpreterIO io) throws IOException {
+        TapeState state = new TapeState(io);
+        state.tape = new long[Interpreter.INITIAL_TAPE];
+        state.pointer = Interpreter.INITIAL_TAPE / 2;
+        try {
+            this.handle.invokeExact(state);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Program failed", e);
+        }
+        io.flush();
+    }
+
+    public MethodHandle getHandle() {
+        return this.handle;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads and writes raw bytes, as {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BinaryIO} does.
+ * Output is buffered, and flushed before each read that needs more input.
+ */
+public class ByteIO implements InterpreterIO {
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private InputStream in;
+    private OutputStream out;
+    private int eof;
+    private byte[] inputBuffer;
+    private int inputIndex;
+    private int inputCount;
+    private byte[] outputBuffer;
+    private int outputCount;
+
+    public ByteIO(InputStream in, int eof, OutputStream out) {
+        this.in = in;
+        this.eof = eof;
+        this.out = out;
+        this.inputBuffer = new byte[BUFFER_SIZE];
+        this.outputBuffer = new byte[BUFFER_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.inputIndex == this.inputCount) {
+            this.flush();
+            this.inputCount = this.in.read(this.inputBuffer, 0, this.inputBuffer.length);
+            this.inputIndex = 0;
+            if (this.inputCount <= 0) {
+                this.inputCount = 0;
+                return this.eof;
+            }
+        }
+        return this.inputBuffer[this.inputIndex++] & 0xFF;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (this.outputCount == this.outputBuffer.length) {
+            this.flush();
+        }
+        this.outputBuffer[this.outputCount++] = (byte) value;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.outputCount > 0) {
+            this.out.write(this.outputBuffer, 0, this.outputCount);
+            this.outputCount = 0;
+        }
+        this.out.flush();
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.BufferedIO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+/**
+ * Reads codepoints either from program arguments joined by spaces, as
+ * {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ArgumentIO} does, or from a reader, as
+ * {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.SystemIO} does, and writes codepoints to a print
+ * stream. With a flush policy, output is buffered and printed in bulk as {@link BufferedIO} does, and otherwise each
+ * codepoint is printed as it is written. Either way, it is encoded in the charset of the print stream.
+ */
+public class CharacterIO implements InterpreterIO {
+    private int[] points;
+    private int index;
+    private Reader in;
+    private int eof;
+    private PrintStream out;
+    private BufferedIO.FlushPolicy policy;
+    private StringBuilder buffer;
+
+    public CharacterIO(String[] args, int eof, PrintStream out, BufferedIO.FlushPolicy policy) {
+        this.points = String.join(" ", args).codePoints().toArray();
+        this.eof = eof;
+        this.out = out;
+        this.policy = policy;
+        this.buffer = new StringBuilder();
+    }
+
+    public CharacterIO(Reader in, int eof, PrintStream out, BufferedIO.FlushPolicy policy) {
+        this.in = in.markSupported() ? in : new BufferedReader(in);
+        this.eof = eof;
+        this.out = out;
+        this.policy = policy;
+        this.buffer = new StringBuilder();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.policy == BufferedIO.FlushPolicy.INPUT) {
+            this.flush();
+        }
+
+        if (this.in == null) {
+            return this.index < this.points.length ? this.points[this.index++] : this.eof;
+        }
+
+        int c = this.in.read();
+        if (c < 0) {
+            return this.eof;
+        } else if (!Character.isHighSurrogate((char) c)) {
+            return c;
+        }
+        this.in.mark(1);
+        int d = this.in.read();
+        if (d < 0) {
+            return c;
+        } else if (!Character.isLowSurrogate((char) d)) {
+            this.in.reset();
+            return c;
+        }
+        return Character.toCodePoint((char) c, (char) d);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (this.policy == null) {
+            this.out.print(new String(new int[]{value}, 0, 1));
+            return;
+        }
+
+        if (!Character.isValidCodePoint(value)) {
+            throw new IllegalArgumentException("Invalid codepoint");
+        }
+        //like PrintStream, lone surrogates are written as ?, so that two of them never join into a pair
+        this.buffer.appendCodePoint(value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE ? '?' : value);
+        if (this.buffer.length() >= BufferedIO.BUFFER_SIZE || (value == '\n' && this.policy == BufferedIO.FlushPolicy.NEWLINE)) {
+            this.flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.buffer.length() > 0) {
+            this.out.print(this.buffer);
+            this.buffer.setLength(0);
+        }
+        this.out.flush();
+    }
+
+}
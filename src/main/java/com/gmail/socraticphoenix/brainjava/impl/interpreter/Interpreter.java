@@ -0,0 +1,340 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.Executor;
+
+/**
+ * A program lowered by an {@link InterpreterVisitor} to a flat array of instructions, each an opcode followed by its
+ * operands, with the targets of jumps already resolved. Running it needs no class generation or loading, so it starts
+ * immediately, at the cost of the throughput of a compiled program.
+ * <p>
+ * Cells hold their values as longs, with the arithmetic of a {@link CellRange}, and so behave exactly as those of the
+ * cell model for the same bounds. An interpreter holds no state of its own, and may run on several threads at once.
+ * <p>
+ * A {@link #tiered(int, Executor) tiered} interpreter also counts the iterations of each loop, and runs loops compiled by
+ * its {@link TierCompiler} in place of interpreting them, sharing the tape with them through a {@link TapeState}.
+ */
+public class Interpreter {
+    /** {@code ADD delta}: adds to the current cell. */
+    public static final int ADD = 0;
+    /** {@code MOVE delta}: moves the pointer. */
+    public static final int MOVE = 1;
+    /** {@code IN offset}: reads into the cell at an offset. */
+    public static final int IN = 2;
+    /** {@code OUT offset}: writes the cell at an offset. */
+    public static final int OUT = 3;
+    /** {@code JZ target loop}: jumps past the end of a loop if the current cell is zero. */
+    public static final int JZ = 4;
+    /** {@code JNZ target loop}: jumps back to the start of a loop body if the current cell is not zero. */
+    public static final int JNZ = 5;
+    /** {@code ZERO offset}: clears the cell at an offset. */
+    public static final int ZERO = 6;
+    /** {@code MUL_ADD offset count (target factor)*}: adds multiples of the cell at an offset to others, then clears it. */
+    public static final int MUL_ADD = 7;
+    /** {@code SCAN stride}: moves the pointer by a stride until it is on a zero cell. */
+    public static final int SCAN = 8;
+    /** {@code ADD_AT offset delta}: adds to the cell at an offset. */
+    public static final int ADD_AT = 9;
+    /** {@code RESERVE min max}: grows the tape to hold the cells at offsets from {@code min} to {@code max}. */
+    public static final int RESERVE = 10;
+    /** {@code TEXT index}: writes a string of evaluated output. */
+    public static final int TEXT = 11;
+    /** {@code PRESET index offset}: sets cells to evaluated values, starting at an offset. */
+    public static final int PRESET = 12;
+    /** {@code HALT}: ends the program. */
+    public static final int HALT = 13;
+
+    public static final int INITIAL_TAPE = 1 << 12;
+
+    private int[] code;
+    private String[] text;
+    private long[][] cells;
+    private WhileNode[] loops;
+    private CellRange range;
+    private TierCompiler tiers;
+    private int arithmetic;
+
+    private static final int LONG = 0;
+    private static final int INT = 1;
+    private static final int BYTE = 2;
+    private static final int BOUNDED = 3;
+
+    public Interpreter(int[] code, String[] text, long[][] cells, WhileNode[] loops, CellRange range) {
+        this(code, text, cells, loops, range, null);
+    }
+
+    private Interpreter(int[] code, String[] text, long[][] cells, WhileNode[] loops, CellRange range, TierCompiler tiers) {
+        this.code = code;
+        this.text = text;
+        this.cells = cells;
+        this.loops = loops;
+        this.range = range;
+        this.tiers = tiers;
+        if (range.getMin() == Long.MIN_VALUE && range.getMax() == Long.MAX_VALUE) {
+            this.arithmetic = LONG;
+        } else if (range.getMin() == Integer.MIN_VALUE && range.getMax() == Integer.MAX_VALUE) {
+            this.arithmetic = INT;
+        } else if (range.getMin() == 0 && range.getMax() == 255) {
+            this.arithmetic = BYTE;
+        } else {
+            this.arithmetic = BOUNDED;
+        }
+    }
+
+    /**
+     * Creates an interpreter for the same program that compiles each loop once it runs {@code threshold} iterations.
+     *
+     * @param threshold The number of iterations after which a loop is compiled.
+     * @param executor The executor to compile loops on.
+     * @return The tiered interpreter.
+     */
+    public Interpreter tiered(int threshold, Executor executor) {
+        return new Interpreter(this.code, this.text, this.cells, this.loops, this.range, new TierCompiler(this.loops, this.range, threshold, executor));
+    }
+
+    /**
+     * Runs the program on a new tape, and flushes {@code io} when it ends.
+     *
+     * @param io The input and output of the program.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(InterpreterIO io) throws IOException {
+        int[] code = this.code;
+        int arithmetic = this.arithmetic;
+        CellRange range = this.range;
+        TierCompiler tiers = this.tiers;
+        TapeState state = new TapeState(io);
+        long[] tape = new long[INITIAL_TAPE];
+        int p = INITIAL_TAPE / 2;
+        int pc = 0;
+        MethodHandle loop;
+
+        while (true) {
+            switch (code[pc]) {
+                case ADD: {
+                    long value = tape[p] + code[pc + 1];
+                    if (arithmetic == INT) {
+                        value = (int) value;
+                    } else if (arithmetic == BYTE) {
+                        value &= 0xFF;
+                    } else if (arithmetic == BOUNDED) {
+                        value = range.add(tape[p], code[pc + 1]);
+                    }
+                    tape[p] = value;
+                    pc += 2;
+                    break;
+                }
+                case ADD_AT: {
+                    int index = p + code[pc + 1];
+                    long value = tape[index] + code[pc + 2];
+                    if (arithmetic == INT) {
+                        value = (int) value;
+                    } else if (arithmetic == BYTE) {
+                        value &= 0xFF;
+                    } else if (arithmetic == BOUNDED) {
+                        value = range.add(tape[index], code[pc + 2]);
+                    }
+                    tape[index] = value;
+                    pc += 3;
+                    break;
+                }
+                case MOVE:
+                    p += code[pc + 1];
+                    if (p < 0 || p >= tape.length) {
+                        int shift = shift(tape, p);
+                        tape = grow(tape, p, p, shift);
+                        p += shift;
+                    }
+                    pc += 2;
+                    break;
+                case JZ:
+                    if (tape[p] == 0) {
+                        pc = code[pc + 1];
+                    } else if (tiers != null && (loop = tiers.get(code[pc + 2])) != null) {
+                        state.tape = tape;
+                        state.pointer = p;
+                        invoke(loop, state);
+                        tape = state.tape;
+                        p = state.pointer;
+                        pc = code[pc + 1];
+                    } else {
+                        pc += 3;
+                    }
+                    break;
+                case JNZ:
+                    if (tape[p] == 0) {
+                        pc += 3;
+                    } else if (tiers != null && (loop = tiers.count(code[pc + 2])) != null) {
+                        state.tape = tape;
+                        state.pointer = p;
+                        invoke(loop, state);
+                        tape = state.tape;
+                        p = state.pointer;
+                        pc += 3;
+                    } else {
+                        pc = code[pc + 1];
+                    }
+                    break;
+                case ZERO:
+                    tape[p + code[pc + 1]] = 0;
+                    pc += 2;
+                    break;
+                case MUL_ADD: {
+                    int index = p + code[pc + 1];
+                    long counter = tape[index];
+                    int count = code[pc + 2];
+                    pc += 3;
+                    if (counter != 0) {
+                        for (int i = 0; i < count; i++) {
+                            int target = index + code[pc + 2 * i];
+                            long value = tape[target] + counter * code[pc + 2 * i + 1];
+                            if (arithmetic == INT) {
+                                value = (int) value;
+                            } else if (arithmetic == BYTE) {
+                                value &= 0xFF;
+                            } else if (arithmetic == BOUNDED) {
+                                value = range.mulAdd(tape[target], counter, code[pc + 2 * i + 1]);
+                            }
+                            tape[target] = value;
+                        }
+                        tape[index] = 0;
+                    }
+                    pc += 2 * count;
+                    break;
+                }
+                case SCAN: {
+                    int stride = code[pc + 1];
+                    while (tape[p] != 0) {
+                        p += stride;
+                        if (p < 0 || p >= tape.length) {
+                            int shift = shift(tape, p);
+                            tape = grow(tape, p, p, shift);
+                            p += shift;
+                        }
+                    }
+                    pc += 2;
+                    break;
+                }
+                case RESERVE: {
+                    int min = p + code[pc + 1];
+                    int max = p + code[pc + 2];
+                    if (min < 0 || max >= tape.length) {
+                        int shift = shift(tape, min);
+                        tape = grow(tape, min, max, shift);
+                        p += shift;
+                    }
+                    pc += 3;
+                    break;
+                }
+                case IN:
+                    tape[p + code[pc + 1]] = range.fromCodepoint(io.read());
+                    pc += 2;
+                    break;
+                case OUT:
+                    io.write((int) tape[p + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case TEXT: {
+                    String text = this.text[code[pc + 1]];
+                    for (int i = 0; i < text.length(); ) {
+                        int c = text.codePointAt(i);
+                        io.write(c);
+                        i += Character.charCount(c);
+                    }
+                    pc += 2;
+                    break;
+                }
+                case PRESET: {
+                    long[] cells = this.cells[code[pc + 1]];
+                    int start = p + code[pc + 2];
+                    if (start < 0 || start + cells.length > tape.length) {
+                        int shift = shift(tape, start);
+                        tape = grow(tape, start, start + cells.length - 1, shift);
+                        p += shift;
+                        start += shift;
+                    }
+                    System.arraycopy(cells, 0, tape, start, cells.length);
+                    pc += 3;
+                    break;
+                }
+                case HALT:
+                    io.flush();
+                    return;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    private static void invoke(MethodHandle loop, TapeState state) throws IOException {
+        try {
+            loop.invokeExact(state);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Compiled loop failed", e);
+        }
+    }
+
+    /**
+     * @return How far the cells of {@code tape} must move right for index {@code min} to be on it.
+     */
+    static int shift(long[] tape, int min) {
+        return min < 0 ? Math.max(tape.length, -min) : 0;
+    }
+
+    /**
+     * @return A copy of {@code tape} with its cells moved right by {@code shift}, long enough for indices {@code min} to
+     * {@code max} to be on it after the move.
+     */
+    static long[] grow(long[] tape, int min, int max, int shift) {
+        int length = Math.max(tape.length + shift, max + shift + 1);
+        if (max >= tape.length) {
+            length = Math.max(length, tape.length * 2);
+        }
+        long[] grown = new long[length];
+        System.arraycopy(tape, 0, grown, shift, tape.length);
+        return grown;
+    }
+
+    public int[] getCode() {
+        return this.code;
+    }
+
+    public CellRange getRange() {
+        return this.range;
+    }
+
+    /**
+     * @return The compiler of this interpreter's loops, or null if it is not tiered.
+     */
+    public TierCompiler getTiers() {
+        return this.tiers;
+    }
+
+}
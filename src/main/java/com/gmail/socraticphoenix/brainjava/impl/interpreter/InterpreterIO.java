@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import java.io.IOException;
+
+/**
+ * The input and output of an {@link Interpreter}, counterpart to the
+ * {@link com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel} of a compiled program.
+ */
+public interface InterpreterIO {
+
+    /**
+     * @return The next codepoint or byte of input, or the eof value once input is exhausted.
+     * @throws IOException If reading fails.
+     */
+    int read() throws IOException;
+
+    /**
+     * Writes a value of output, a codepoint or the low 8 bits of a byte.
+     *
+     * @param value The value to write.
+     * @throws IOException If writing fails.
+     */
+    void write(int value) throws IOException;
+
+    /**
+     * Writes any buffered output.
+     *
+     * @throws IOException If writing fails.
+     */
+    void flush() throws IOException;
+
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.PrefixNode;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.ast.SetZeroNode;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckVisitor;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Lowers a program to the instructions of an {@link Interpreter}. Recognized loops are lowered to arithmetic only when
+ * the cells wrap, exactly as the {@link com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler}
+ * compiles them.
+ */
+public class InterpreterVisitor implements BrainfuckVisitor {
+    private CellRange range;
+    private int[] code;
+    private int size;
+    private List<String> text;
+    private List<long[]> cells;
+    private List<WhileNode> bodies;
+    private Stack<Integer> loops;
+    private Interpreter interpreter;
+
+    public InterpreterVisitor(CellRange range) {
+        this.range = range;
+        this.code = new int[64];
+        this.text = new ArrayList<>();
+        this.cells = new ArrayList<>();
+        this.bodies = new ArrayList<>();
+        this.loops = new Stack<>();
+    }
+
+    /**
+     * Lowers a program for an interpreter.
+     *
+     * @param program The source of the program.
+     * @param range The values the cells hold.
+     * @param passes The passes to apply to the program.
+     * @return The lowered program.
+     * @throws BrainfuckCompilationException If the program fails to parse.
+     */
+    public static Interpreter lower(String program, CellRange range, BrainfuckPassManager passes) throws BrainfuckCompilationException {
+        InterpreterVisitor visitor = new InterpreterVisitor(range);
+        BrainfuckCompiler.compile(program, visitor, passes);
+        return visitor.getInterpreter();
+    }
+
+    /**
+     * @return The lowered program, once the whole program has been visited.
+     */
+    public Interpreter getInterpreter() {
+        if (this.interpreter == null) {
+            throw new IllegalStateException("The program has not been fully visited");
+        }
+        return this.interpreter;
+    }
+
+    private void emit(int... values) {
+        if (this.size + values.length > this.code.length) {
+            this.code = Arrays.copyOf(this.code, Math.max(this.code.length * 2, this.size + values.length));
+        }
+        System.arraycopy(values, 0, this.code, this.size, values.length);
+        this.size += values.length;
+    }
+
+    @Override
+    public void visitStart() throws BrainfuckCompilationException {
+        if (!this.loops.isEmpty() && this.loops.peek() < 0) {
+            this.emit(Interpreter.JZ, -1, -this.loops.pop() - 1);
+            this.loops.push(this.size - 2);
+        }
+    }
+
+    @Override
+    public BrainfuckVisitor visitWhile(WhileNode node) throws BrainfuckCompilationException {
+        //the loop's index, until its start is visited
+        this.loops.push(-this.bodies.size() - 1);
+        this.bodies.add(node);
+        return this;
+    }
+
+    @Override
+    public void visitAdvance(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.MOVE, 1);
+    }
+
+    @Override
+    public void visitRetreat(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.MOVE, -1);
+    }
+
+    @Override
+    public void visitIncrement(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.ADD, 1);
+    }
+
+    @Override
+    public void visitDecrement(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.ADD, -1);
+    }
+
+    @Override
+    public void visitInput(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.IN, 0);
+    }
+
+    @Override
+    public void visitOutput(Node node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.OUT, 0);
+    }
+
+    @Override
+    public void visitAdd(AddNode node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.ADD, node.getDelta());
+    }
+
+    @Override
+    public void visitMove(MoveNode node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.MOVE, node.getDelta());
+    }
+
+    @Override
+    public void visitSetZero(SetZeroNode node) throws BrainfuckCompilationException {
+        if (this.range.wraps()) {
+            this.emit(Interpreter.ZERO, 0);
+        } else {
+            BrainfuckVisitor.super.visitSetZero(node);
+        }
+    }
+
+    @Override
+    public void visitMulAdd(MulAddNode node) throws BrainfuckCompilationException {
+        if (this.range.wraps()) {
+            int min = 0;
+            int max = 0;
+            for (int offset : node.getOffsets()) {
+                min = Math.min(min, offset);
+                max = Math.max(max, offset);
+            }
+            this.emit(Interpreter.RESERVE, min, max);
+            this.mulAdd(0, node);
+        } else {
+            BrainfuckVisitor.super.visitMulAdd(node);
+        }
+    }
+
+    private void mulAdd(int offset, MulAddNode node) {
+        this.emit(Interpreter.MUL_ADD, offset, node.getOffsets().length);
+        for (int i = 0; i < node.getOffsets().length; i++) {
+            this.emit(node.getOffsets()[i], node.getFactors()[i]);
+        }
+    }
+
+    @Override
+    public void visitScan(ScanNode node) throws BrainfuckCompilationException {
+        this.emit(Interpreter.SCAN, node.getStride());
+    }
+
+    @Override
+    public void visitBlock(BlockNode node) throws BrainfuckCompilationException {
+        for (Node op : node.getNodes()) {
+            if ((op.kind() == Kind.SET_ZERO || op.kind() == Kind.MUL_ADD) && !this.range.wraps()) {
+                BrainfuckVisitor.super.visitBlock(node);
+                return;
+            }
+        }
+
+        this.emit(Interpreter.RESERVE, node.getMin(), node.getMax());
+        for (int i = 0; i < node.getOffsets().length; i++) {
+            Node op = node.getNodes().get(i);
+            int offset = node.getOffsets()[i];
+            switch (op.kind()) {
+                case ADD:
+                    this.emit(Interpreter.ADD_AT, offset, ((AddNode) op).getDelta());
+                    break;
+                case INPUT:
+                    this.emit(Interpreter.IN, offset);
+                    break;
+                case OUTPUT:
+                    this.emit(Interpreter.OUT, offset);
+                    break;
+                case SET_ZERO:
+                    this.emit(Interpreter.ZERO, offset);
+                    break;
+                case MUL_ADD:
+                    this.mulAdd(offset, (MulAddNode) op);
+                    break;
+            }
+        }
+        if (node.getShift() != 0) {
+            this.emit(Interpreter.MOVE, node.getShift());
+        }
+    }
+
+    @Override
+    public void visitPrefix(PrefixNode node) throws BrainfuckCompilationException {
+        if (!node.getOutput().isEmpty()) {
+            this.emit(Interpreter.TEXT, this.text.size());
+            this.text.add(node.getOutput());
+        }
+        if (node.getCells().length > 0) {
+            this.emit(Interpreter.PRESET, this.cells.size(), node.getOffset());
+            this.cells.add(node.getCells());
+        }
+        if (node.getPointer() != 0) {
+            this.emit(Interpreter.MOVE, node.getPointer());
+        }
+    }
+
+    @Override
+    public void visitEnd() throws BrainfuckCompilationException {
+        if (!this.loops.isEmpty()) {
+            int jump = this.loops.pop();
+            this.emit(Interpreter.JNZ, jump + 2, this.code[jump + 1]);
+            this.code[jump] = this.size;
+            return;
+        }
+
+        this.emit(Interpreter.HALT);
+        this.interpreter = new Interpreter(Arrays.copyOf(this.code, this.size), this.text.toArray(new String[0]), this.cells.toArray(new long[0][]), this.bodies.toArray(new WhileNode[0]), this.range);
+    }
+
+}
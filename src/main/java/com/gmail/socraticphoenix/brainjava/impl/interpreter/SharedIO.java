@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.function.Consumer;
+
+/**
+ * An {@link IOModel} that reads and writes through the {@link InterpreterIO} of a {@link TapeState}, which is the first
+ * argument of every method of the program, so that compiled loops share the interpreter's buffers.
+ */
+public class SharedIO implements IOModel {
+    private static final Type STATE = Type.getType(TapeState.class);
+    private static final Type IO = Type.getType(InterpreterIO.class);
+
+    @Override
+    public void initial(String cls, ClassVisitor writer, MethodVisitor clinit) {
+
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter main) {
+
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        gen.loadArg(0);
+        gen.getField(STATE, "io", IO);
+        gen.invokeInterface(IO, new Method("read", Type.INT_TYPE, new Type[0]));
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        gen.loadArg(0);
+        gen.getField(STATE, "io", IO);
+        getVal.accept(gen);
+        gen.invokeInterface(IO, new Method("write", Type.VOID_TYPE, new Type[]{Type.INT_TYPE}));
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+
+    }
+
+}
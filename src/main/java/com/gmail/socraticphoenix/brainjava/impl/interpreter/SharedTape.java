@@ -0,0 +1,409 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.Stack;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TapeModel} over the tape of a {@link TapeState}, which the compiled program takes as the only argument of its
+ * {@code run} method, and of each of its partitions. The tape holds the logical value of each cell as a long, as an
+ * {@link Interpreter} does, and values are converted to and from the {@link CellModel#valueType() cell type} as they are
+ * loaded and stored. The tape and pointer are kept in locals, and written back to the state whenever they leave the
+ * method. Loops must be compiled inline.
+ */
+public class SharedTape implements TapeModel, Opcodes {
+    private static final Type STATE = Type.getType(TapeState.class);
+    private static final Type ARRAY = Type.getType(long[].class);
+
+    private CellModel cell;
+    private IOModel input;
+    private String cls;
+
+    private int tape = -1;
+    private int pointer = -1;
+    private Stack<int[]> partitions = new Stack<>();
+
+    public SharedTape(String cls, CellModel cell, IOModel input) {
+        this.cls = cls;
+        this.cell = cell;
+        this.input = input;
+    }
+
+    @Override
+    public CellModel cell() {
+        return this.cell;
+    }
+
+    @Override
+    public IOModel input() {
+        return this.input;
+    }
+
+    @Override
+    public void initial(ClassVisitor writer) {
+        GeneratorAdapter clinit = new GeneratorAdapter(writer.visitMethod(ACC_STATIC | ACC_PUBLIC, "<clinit>", "()V", null, null), ACC_STATIC | ACC_PUBLIC, "<clinit>", "()V");
+        clinit.visitCode();
+        this.cell.initial(writer, clinit);
+        this.input.initial(this.cls, writer, clinit);
+        clinit.returnValue();
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+    }
+
+    @Override
+    public void initialMethod(GeneratorAdapter gen) {
+        this.input.initialMethod(gen);
+    }
+
+    @Override
+    public Method entry() {
+        return new Method("run", Type.VOID_TYPE, new Type[]{STATE});
+    }
+
+    @Override
+    public boolean localize(GeneratorAdapter gen) {
+        this.tape = gen.newLocal(ARRAY);
+        this.pointer = gen.newLocal(Type.INT_TYPE);
+        this.load(gen);
+        return true;
+    }
+
+    @Override
+    public Method partition(String name) {
+        return new Method(name, Type.VOID_TYPE, new Type[]{STATE});
+    }
+
+    @Override
+    public void invokePartition(GeneratorAdapter gen, Type owner, Method method) {
+        this.store(gen);
+        gen.loadArg(0);
+        gen.invokeStatic(owner, method);
+        this.load(gen);
+    }
+
+    @Override
+    public void beginPartition(GeneratorAdapter gen) {
+        this.partitions.push(new int[]{this.tape, this.pointer});
+        this.localize(gen);
+    }
+
+    @Override
+    public void endPartition(GeneratorAdapter gen) {
+        this.store(gen);
+        gen.returnValue();
+
+        int[] locals = this.partitions.pop();
+        this.tape = locals[0];
+        this.pointer = locals[1];
+    }
+
+    @Override
+    public void advance(GeneratorAdapter gen) {
+        this.move(gen, 1);
+    }
+
+    @Override
+    public void retreat(GeneratorAdapter gen) {
+        this.move(gen, -1);
+    }
+
+    @Override
+    public void increment(GeneratorAdapter gen) {
+        this.update(gen, 0, this.cell::increment);
+    }
+
+    @Override
+    public void decrement(GeneratorAdapter gen) {
+        this.update(gen, 0, this.cell::decrement);
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta) {
+        this.update(gen, 0, g -> this.cell.add(g, delta));
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen) {
+        this.input(gen, 0);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen) {
+        this.output(gen, 0);
+    }
+
+    @Override
+    public void get(GeneratorAdapter gen) {
+        this.index(gen, 0);
+        gen.arrayLoad(Type.LONG_TYPE);
+        this.toCell(gen);
+    }
+
+    @Override
+    public void set(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+        this.index(gen, 0);
+        getVal.accept(gen);
+        this.fromCell(gen);
+        gen.arrayStore(Type.LONG_TYPE);
+    }
+
+    @Override
+    public void end(GeneratorAdapter main) {
+        this.store(main);
+        this.input.end(main);
+    }
+
+    @Override
+    public void move(GeneratorAdapter gen, int delta) {
+        iinc(gen, this.pointer, delta);
+        gen.loadLocal(this.pointer);
+        Label inside = gen.newLabel();
+        if (delta > 0) {
+            gen.loadLocal(this.tape);
+            gen.arrayLength();
+            gen.ifICmp(GeneratorAdapter.LT, inside);
+        } else {
+            gen.ifZCmp(GeneratorAdapter.GE, inside);
+        }
+        this.widen(gen, 0, 0);
+        gen.mark(inside);
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int[] offsets, int[] factors) {
+        int min = 0;
+        int max = 0;
+        for (int offset : offsets) {
+            min = Math.min(min, offset);
+            max = Math.max(max, offset);
+        }
+        this.reserve(gen, min, max);
+        this.mulAdd(gen, 0, offsets, factors);
+    }
+
+    @Override
+    public boolean addressable() {
+        return true;
+    }
+
+    @Override
+    public void enter(GeneratorAdapter gen, int min, int max) {
+        this.reserve(gen, min, max);
+    }
+
+    @Override
+    public void exit(GeneratorAdapter gen, int shift) {
+        //the block reserved every cell it moves to, so no bounds check is needed
+        if (shift != 0) {
+            iinc(gen, this.pointer, shift);
+        }
+    }
+
+    @Override
+    public void add(GeneratorAdapter gen, int delta, int offset) {
+        this.update(gen, offset, g -> this.cell.add(g, delta));
+    }
+
+    @Override
+    public void input(GeneratorAdapter gen, int offset) {
+        this.index(gen, offset);
+        this.input.input(gen);
+        this.cell.fromCodepoint(gen);
+        this.fromCell(gen);
+        gen.arrayStore(Type.LONG_TYPE);
+    }
+
+    @Override
+    public void output(GeneratorAdapter gen, int offset) {
+        this.input.output(gen, g -> {
+            this.index(g, offset);
+            g.arrayLoad(Type.LONG_TYPE);
+            this.toCell(g);
+            this.cell.toCodepoint(g);
+        });
+    }
+
+    @Override
+    public void setZero(GeneratorAdapter gen, int offset) {
+        this.index(gen, offset);
+        gen.push(0L);
+        gen.arrayStore(Type.LONG_TYPE);
+    }
+
+    @Override
+    public void mulAdd(GeneratorAdapter gen, int offset, int[] offsets, int[] factors) {
+        int counter = gen.newLocal(this.cell.valueType());
+        this.index(gen, offset);
+        gen.arrayLoad(Type.LONG_TYPE);
+        this.toCell(gen);
+        gen.storeLocal(counter);
+        for (int i = 0; i < offsets.length; i++) {
+            int factor = factors[i];
+            this.update(gen, offset + offsets[i], g -> {
+                g.loadLocal(counter);
+                this.cell.mulAdd(g, factor);
+            });
+        }
+        this.setZero(gen, offset);
+    }
+
+    /**
+     * Applies {@code op} to the cell {@code offset} cells away from the pointer, as a value of the cell type.
+     */
+    private void update(GeneratorAdapter gen, int offset, Consumer<GeneratorAdapter> op) {
+        this.index(gen, offset);
+        gen.dup2();
+        gen.arrayLoad(Type.LONG_TYPE);
+        this.toCell(gen);
+        op.accept(gen);
+        this.fromCell(gen);
+        gen.arrayStore(Type.LONG_TYPE);
+    }
+
+    /**
+     * Pushes the tape and the index {@code offset} cells away from the pointer.
+     */
+    private void index(GeneratorAdapter gen, int offset) {
+        gen.loadLocal(this.tape);
+        gen.loadLocal(this.pointer);
+        if (offset != 0) {
+            gen.push(offset);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+        }
+    }
+
+    /**
+     * Converts the logical value of a cell to the cell type.
+     */
+    private void toCell(GeneratorAdapter gen) {
+        if (this.cell.valueType().getSort() != Type.LONG) {
+            gen.cast(Type.LONG_TYPE, Type.INT_TYPE);
+            if (this.cell.valueType().getSort() == Type.BYTE) {
+                gen.cast(Type.INT_TYPE, Type.BYTE_TYPE);
+            }
+        }
+    }
+
+    /**
+     * Converts a value of the cell type to the logical value of the cell.
+     */
+    private void fromCell(GeneratorAdapter gen) {
+        if (this.cell.valueType().getSort() != Type.LONG) {
+            if (this.cell.valueType().getSort() == Type.BYTE) {
+                gen.push(0xFF);
+                gen.math(GeneratorAdapter.AND, Type.INT_TYPE);
+            }
+            gen.cast(Type.INT_TYPE, Type.LONG_TYPE);
+        }
+    }
+
+    /**
+     * Ensures that the cells from {@code min} to {@code max} cells away from the pointer are within the tape.
+     */
+    private void reserve(GeneratorAdapter gen, int min, int max) {
+        if (min >= 0 && max <= 0) {
+            return;
+        }
+
+        Label widen = gen.newLabel();
+        Label inside = gen.newLabel();
+        if (min < 0) {
+            gen.loadLocal(this.pointer);
+            gen.push(min);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.ifZCmp(GeneratorAdapter.LT, widen);
+        }
+        if (max > 0) {
+            gen.loadLocal(this.pointer);
+            gen.push(max);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.loadLocal(this.tape);
+            gen.arrayLength();
+            gen.ifICmp(GeneratorAdapter.LT, inside);
+        } else {
+            gen.goTo(inside);
+        }
+        gen.mark(widen);
+        this.widen(gen, min, max);
+        gen.mark(inside);
+    }
+
+    /**
+     * Calls {@link TapeState#widen(int, int)}, and takes the new tape and pointer back from the state.
+     */
+    private void widen(GeneratorAdapter gen, int min, int max) {
+        this.store(gen);
+        gen.loadArg(0);
+        gen.push(min);
+        gen.push(max);
+        gen.invokeVirtual(STATE, new Method("widen", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE}));
+        this.load(gen);
+    }
+
+    /**
+     * Loads the tape and pointer of the state into their locals.
+     */
+    private void load(GeneratorAdapter gen) {
+        gen.loadArg(0);
+        gen.getField(STATE, "tape", ARRAY);
+        gen.storeLocal(this.tape);
+        gen.loadArg(0);
+        gen.getField(STATE, "pointer", Type.INT_TYPE);
+        gen.storeLocal(this.pointer);
+    }
+
+    /**
+     * Writes the pointer back to the state. The tape only changes within {@link TapeState#widen(int, int)}, which
+     * updates the state itself.
+     */
+    private void store(GeneratorAdapter gen) {
+        gen.loadArg(0);
+        gen.loadLocal(this.pointer);
+        gen.putField(STATE, "pointer", Type.INT_TYPE);
+    }
+
+    /**
+     * Adds {@code delta} to the int local {@code local}, with an {@code iinc} if {@code delta} fits in its 16 bit operand.
+     */
+    private static void iinc(GeneratorAdapter gen, int local, int delta) {
+        if (delta == (short) delta) {
+            gen.iinc(local, delta);
+        } else {
+            gen.loadLocal(local);
+            gen.push(delta);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.storeLocal(local);
+        }
+    }
+
+}
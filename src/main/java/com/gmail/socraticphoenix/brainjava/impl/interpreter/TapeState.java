@@ -0,0 +1,54 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+/**
+ * The state of a running {@link Interpreter}, handed to the loops it has compiled, which read and update it as a
+ * {@link SharedTape}. Cells hold their logical values, as they do in the interpreter.
+ */
+public class TapeState {
+    public long[] tape;
+    public int pointer;
+    public InterpreterIO io;
+
+    public TapeState(InterpreterIO io) {
+        this.io = io;
+    }
+
+    /**
+     * Grows the tape so that it holds the cells from {@code min} to {@code max} cells away from the pointer, moving the
+     * pointer along with the cells.
+     *
+     * @param min The lowest offset to hold.
+     * @param max The highest offset to hold.
+     */
+    public void widen(int min, int max) {
+        int low = this.pointer + min;
+        int high = this.pointer + max;
+        if (low < 0 || high >= this.tape.length) {
+            int shift = Interpreter.shift(this.tape, low);
+            this.tape = Interpreter.grow(this.tape, low, high, shift);
+            this.pointer += shift;
+        }
+    }
+
+}
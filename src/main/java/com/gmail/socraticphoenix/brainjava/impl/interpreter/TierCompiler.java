@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.interpreter;
+
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the iterations of each loop of an {@link Interpreter}, and once a loop passes the threshold, compiles it in the
+ * background with a {@link ModelJavaBytecodeCompiler} over a {@link SharedTape}. The interpreter switches to the compiled
+ * loop the next time it reaches either end of the loop with the current cell non-zero, which is equivalent to entering
+ * it anew. Loops of fewer than {@link #MIN_SIZE} nodes are always interpreted, as they cost more to compile and enter
+ * than they save. If a loop fails to compile, it keeps being interpreted, and the first failure is kept for
+ * {@link #getFailure()}.
+ * <p>
+ * Counts are kept without synchronization, so when several runs share a compiler, some iterations may go uncounted.
+ */
+public class TierCompiler {
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    /**
+     * The fewest nodes, counting those of nested loops, in a loop which is compiled.
+     */
+    public static final int MIN_SIZE = 8;
+
+    private static final MethodType RUN = MethodType.methodType(void.class, TapeState.class);
+
+    private WhileNode[] loops;
+    private CellRange range;
+    private int threshold;
+    private Executor executor;
+    private int[] counts;
+    private AtomicReferenceArray<MethodHandle> compiled;
+    private AtomicInteger compiledLoops;
+    private AtomicInteger failedLoops;
+    private AtomicReference<Throwable> failure;
+
+    public TierCompiler(WhileNode[] loops, CellRange range, int threshold, Executor executor) {
+        this.loops = loops;
+        this.range = range;
+        this.threshold = threshold;
+        this.executor = executor;
+        this.counts = new int[loops.length];
+        this.compiled = new AtomicReferenceArray<>(loops.length);
+        this.compiledLoops = new AtomicInteger();
+        this.failedLoops = new AtomicInteger();
+        this.failure = new AtomicReference<>();
+        for (int i = 0; i < loops.length; i++) {
+            if (size(loops[i]) < MIN_SIZE) {
+                //never reaches the threshold, so the loop is only interpreted
+                this.counts[i] = Integer.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * @return The number of nodes in {@code node}, counting those of nested loops and blocks.
+     */
+    private static int size(Node node) {
+        if (node.kind() == Kind.WHILE_START) {
+            int size = 1;
+            for (Node child : ((WhileNode) node).getNodes()) {
+                size += size(child);
+            }
+            return size;
+        } else if (node.kind() == Kind.BLOCK) {
+            return ((BlockNode) node).getNodes().size();
+        }
+        return 1;
+    }
+
+    /**
+     * @return The compiled version of loop {@code loop}, or null if it has not been compiled yet.
+     */
+    public MethodHandle get(int loop) {
+        return this.compiled.get(loop);
+    }
+
+    /**
+     * Counts an iteration of loop {@code loop}, starting its compilation once it passes the threshold.
+     *
+     * @return The compiled version of the loop, or null if it has not been compiled yet.
+     */
+    public MethodHandle count(int loop) {
+        MethodHandle handle = this.compiled.get(loop);
+        if (handle == null && ++this.counts[loop] >= this.threshold) {
+            //never reaches the threshold again, so the loop is compiled once
+            this.counts[loop] = Integer.MIN_VALUE;
+            this.executor.execute(() -> this.compile(loop));
+        }
+        return handle;
+    }
+
+    private void compile(int loop) {
+        String name = "com/gmail/socraticphoenix/brainjava/impl/interpreter/Loop" + loop;
+        try {
+            ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(new SharedTape(name, Models.boundedCell(this.range.getMin(), this.range.getMax()), new SharedIO()), name, true);
+            compiler.visitStart();
+            compiler.visitAll(Collections.singletonList(this.loops[loop]));
+            compiler.visitEnd();
+
+            Class<?> cls = new CompiledProgram(name, compiler.dumpClasses(), false).load();
+            this.compiled.set(loop, MethodHandles.publicLookup().findStatic(cls, "run", RUN));
+            this.compiledLoops.incrementAndGet();
+        } catch (BrainfuckCompilationException | ReflectiveOperationException | RuntimeException e) {
+            //the loop keeps being interpreted
+            this.failure.compareAndSet(null, e);
+            this.failedLoops.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The number of loops compiled so far.
+     */
+    public int getCompiledLoops() {
+        return this.compiledLoops.get();
+    }
+
+    /**
+     * @return The number of loops that failed to compile, and are only interpreted.
+     */
+    public int getFailedLoops() {
+        return this.failedLoops.get();
+    }
+
+    /**
+     * @return The first failure to compile a loop, or null if none have failed.
+     */
+    public Throwable getFailure() {
+        return this.failure.get();
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava;
+
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
+import com.gmail.socraticphoenix.brainjava.impl.FrameAdapter;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.IOModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the time taken to compile programs with frames emitted by a {@link FrameAdapter}, against frames computed
+ * by ASM. Each program is compiled with 8-bit cells, for both the list and array tapes, and both loop modes, and the
+ * median of a number of rounds is printed, after as many rounds to warm up.
+ * <p>
+ * Usage: {@code FrameBenchmark [-rounds=<n>] [program file...]}. With no files, a generated program of a few thousand
+ * nested loops is used.
+ */
+public class FrameBenchmark {
+    private static final int DEFAULT_ROUNDS = 20;
+
+    public static void main(String[] args) throws BrainfuckCompilationException, IOException {
+        int rounds = DEFAULT_ROUNDS;
+        Map<String, String> programs = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("-rounds=")) {
+                rounds = Integer.parseInt(arg.substring("-rounds=".length()));
+            } else {
+                programs.put(arg, new String(Files.readAllBytes(Paths.get(arg)), StandardCharsets.UTF_8));
+            }
+        }
+        if (programs.isEmpty()) {
+            programs.put("generated", generate(new Random(0), 4000));
+        }
+
+        BrainfuckPassManager passes = BrainJava.passes(3, 0, 255, 1000000);
+        for (Map.Entry<String, String> program : programs.entrySet()) {
+            System.out.println(program.getKey() + ":");
+            for (String tape : new String[]{"list", "array"}) {
+                for (boolean inline : new boolean[]{false, true}) {
+                    long[] times = time(program.getValue(), tape, inline, passes, rounds);
+                    System.out.println(String.format(" %-5s %-7s emitted: %8.3fms, computed: %8.3fms (%.2fx)", tape, inline ? "inline" : "methods",
+                            times[0] / 1e6, times[1] / 1e6, (double) times[1] / times[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Times compiling a program with frames emitted and computed, alternately, so that neither benefits from the other
+     * having warmed up the JIT.
+     *
+     * @return The median times, in nanoseconds, with frames emitted and computed.
+     */
+    private static long[] time(String program, String tape, boolean inline, BrainfuckPassManager passes, int rounds) throws BrainfuckCompilationException {
+        long[][] times = new long[2][rounds];
+        for (int i = -rounds; i < rounds; i++) {
+            for (int j = 0; j < 2; j++) {
+                boolean computeFrames = (i + j) % 2 != 0;
+                long start = System.nanoTime();
+                CellModel cell = Models.boundedCell(0, 255);
+                IOModel io = Models.argumentIO(0);
+                TapeModel model = tape.equals("array") ? Models.arrayTape("Benchmark", cell, io) : Models.unboundedTape("Benchmark", cell, io);
+                ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(model, "Benchmark", inline, false, computeFrames);
+                BrainfuckCompiler.compile(program, compiler, passes);
+                compiler.dump();
+                if (i >= 0) {
+                    times[computeFrames ? 1 : 0][i] = System.nanoTime() - start;
+                }
+            }
+        }
+        Arrays.sort(times[0]);
+        Arrays.sort(times[1]);
+        return new long[]{times[0][rounds / 2], times[1][rounds / 2]};
+    }
+
+    /**
+     * Generates a program of random, nested loops, which is only compiled, never run.
+     *
+     * @param random The source of randomness.
+     * @param steps The number of runs of instructions to generate, each followed by a bracket.
+     * @return The program.
+     */
+    private static String generate(Random random, int steps) {
+        StringBuilder program = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < steps; i++) {
+            program.append("+-<>.,".charAt(random.nextInt(6)));
+            program.append(random.nextBoolean() ? "+>-" : "<+>");
+            if (depth > 0 && random.nextInt(3) == 0) {
+                program.append(']');
+                depth--;
+            } else if (depth < 8) {
+                program.append('[');
+                depth++;
+            }
+        }
+        while (depth-- > 0) {
+            program.append(']');
+        }
+        return program.toString();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava;
+
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPass;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckPassManager;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.CellModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
+
+import java.util.Arrays;
+
+/**
+ * Sample programs shared by the tests, and helpers to compile and run them, by default with 8-bit cells, so that an
+ * optimized build of a program can be compared against its baseline, compiled with no passes.
+ */
+public final class Programs {
+
+    /**
+     * Programs covering every kind of node, which halt on {@link #INPUT}, with 8-bit cells, signed 8-bit cells or 64-bit
+     * cells.
+     */
+    public static final String[] SAMPLES = {
+            "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.>++.",
+            "++++++[>++++++++<-]>[>+>++<<-]>.>.<<++++[>>>+<<<-]>>>[<<+>>-]<<.",
+            "++++[>++++[>++++<-]<-]>>+.[-]++++++++[>++++++<-]>.[->+>+<<]>>.<.",
+            "+>+>+>+>+>>>+[<]>.>.<<<<<[-]>[>]<.",
+            "+>>+>>+>>>>+<<<<[<<]>>.>>>>>>+[>>>>]<<<<.",
+            ">,[>,]<[.<]",
+            ",>,>+++<<[>[->+>+<<]>[-<+>]<<-]>>>.<<<,[-]>.",
+            "++++++++[>+++++++++<-]>[>+<-]>[.-]",
+            "-.+>--[>+<++]>.",
+            ">>+++++[<<++>>-]<<.<+++[->>+<<]>>.",
+            "+>++>+++<<[->>[->+<]<<]>>>.<.",
+            ",[.,]"
+    };
+
+    /**
+     * The input given to the {@link #SAMPLES}.
+     */
+    public static final byte[] INPUT = {3, 5, 'x', 'y'};
+
+    private static int count = 0;
+
+    private Programs() {
+
+    }
+
+    /**
+     * @param extra Programs to add to the samples.
+     * @return The {@link #SAMPLES}, followed by {@code extra}.
+     */
+    public static String[] samples(String... extra) {
+        String[] result = Arrays.copyOf(SAMPLES, SAMPLES.length + extra.length);
+        System.arraycopy(extra, 0, result, SAMPLES.length, extra.length);
+        return result;
+    }
+
+    /**
+     * Compiles a program with no passes, on the list tape with loops compiled as methods, as programs were compiled
+     * before there were passes, and runs it.
+     *
+     * @param program The source of the program.
+     * @param input The input to the program.
+     * @return The output of the program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static byte[] baseline(String program, byte[] input) throws BrainfuckCompilationException {
+        return baseline(program, new ByteCell(), input);
+    }
+
+    /**
+     * Compiles a program with no passes, like {@link #baseline(String, byte[])}, with the given cells.
+     *
+     * @param program The source of the program.
+     * @param cell The model of the cells.
+     * @param input The input to the program.
+     * @return The output of the program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static byte[] baseline(String program, CellModel cell, byte[] input) throws BrainfuckCompilationException {
+        return run(program, cell, new BrainfuckPassManager(), false, false, input);
+    }
+
+    /**
+     * Compiles a program with the given passes, and runs it.
+     *
+     * @param program The source of the program.
+     * @param passes The passes to apply to the program.
+     * @param array Whether to compile for the array tape, rather than the list tape.
+     * @param inline Whether to compile loops inline.
+     * @param input The input to the program.
+     * @return The output of the program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static byte[] run(String program, BrainfuckPassManager passes, boolean array, boolean inline, byte[] input) throws BrainfuckCompilationException {
+        return run(program, new ByteCell(), passes, array, inline, input);
+    }
+
+    /**
+     * Compiles a program with the given cells and passes, and runs it.
+     *
+     * @param program The source of the program.
+     * @param cell The model of the cells.
+     * @param passes The passes to apply to the program.
+     * @param array Whether to compile for the array tape, rather than the list tape.
+     * @param inline Whether to compile loops inline.
+     * @param input The input to the program.
+     * @return The output of the program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static byte[] run(String program, CellModel cell, BrainfuckPassManager passes, boolean array, boolean inline, byte[] input) throws BrainfuckCompilationException {
+        return compile(program, cell, passes, array, inline).run(input);
+    }
+
+    /**
+     * Compiles a program with the given passes, into a program which keeps its state in an instance.
+     *
+     * @param program The source of the program.
+     * @param passes The passes to apply to the program.
+     * @param array Whether to compile for the array tape, rather than the list tape.
+     * @param inline Whether to compile loops inline.
+     * @return The compiled program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static CompiledProgram compile(String program, BrainfuckPassManager passes, boolean array, boolean inline) throws BrainfuckCompilationException {
+        return compile(program, new ByteCell(), passes, array, inline);
+    }
+
+    /**
+     * Compiles a program with the given cells and passes, into a program which keeps its state in an instance.
+     *
+     * @param program The source of the program.
+     * @param cell The model of the cells.
+     * @param passes The passes to apply to the program.
+     * @param array Whether to compile for the array tape, rather than the list tape.
+     * @param inline Whether to compile loops inline.
+     * @return The compiled program.
+     * @throws BrainfuckCompilationException If the program fails to compile.
+     */
+    public static CompiledProgram compile(String program, CellModel cell, BrainfuckPassManager passes, boolean array, boolean inline) throws BrainfuckCompilationException {
+        String name = "Sample" + count++;
+        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(tape(name, cell, array), name, inline, true);
+        BrainfuckCompiler.compile(program, compiler, passes);
+        return new CompiledProgram(name, compiler.dumpClasses(), true);
+    }
+
+    /**
+     * Creates a tape reading and writing bytes.
+     *
+     * @param name The name of the class the program will be compiled to.
+     * @param cell The model of the cells.
+     * @param array Whether to create the array tape, rather than the list tape.
+     * @return A new model.
+     */
+    public static TapeModel tape(String name, CellModel cell, boolean array) {
+        return array ? Models.arrayTape(name, cell, Models.binaryIO(0)) : Models.unboundedTape(name, cell, Models.binaryIO(0));
+    }
+
+    /**
+     * @param passes The passes to apply.
+     * @return A pass manager applying {@code passes}, in order.
+     */
+    public static BrainfuckPassManager passes(BrainfuckPass... passes) {
+        return new BrainfuckPassManager(passes);
+    }
+
+    public static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+}
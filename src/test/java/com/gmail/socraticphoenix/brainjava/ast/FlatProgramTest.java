@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.ast;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FlatProgramTest {
+    private static int count = 0;
+
+    @Test
+    public void visitedProgramsMatchBaseline() throws BrainfuckCompilationException {
+        for (String program : Programs.SAMPLES) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            FlatProgram flat = BrainfuckCompiler.flatten(program);
+            for (boolean fold : new boolean[] {false, true}) {
+                String name = "Flat" + count++;
+                ModelJavaBytecodeCompiler compiler = compiler(name);
+                BrainfuckCompiler.compile(flat, compiler, fold, new CellRange(0, 255));
+                assertArrayEquals(expected, new CompiledProgram(name, compiler.dumpClasses(), true).run(Programs.INPUT));
+            }
+        }
+    }
+
+    @Test
+    public void nodesMatchBaseline() throws BrainfuckCompilationException {
+        for (String program : Programs.SAMPLES) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            FlatProgram flat = BrainfuckCompiler.flatten(program);
+            for (FlatProgram variant : new FlatProgram[] {flat, flat.fold(false), flat.fold(true)}) {
+                for (int level = 0; level <= 3; level++) {
+                    String name = "Flat" + count++;
+                    ModelJavaBytecodeCompiler compiler = compiler(name);
+                    compiler.visitStart();
+                    compiler.visitAll(BrainJava.passes(level, 0, 255, 1000000L).apply(variant.toNodes()));
+                    compiler.visitEnd();
+                    assertArrayEquals(expected, new CompiledProgram(name, compiler.dumpClasses(), true).run(Programs.INPUT));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bracketsAndLocations() throws BrainfuckCompilationException {
+        FlatProgram flat = BrainfuckCompiler.flatten("+[a>\r\n[-]b<]\n.");
+        assertEquals(9, flat.size());
+        assertEquals(Kind.WHILE_START, flat.kind(1));
+        assertEquals(7, flat.jump(1));
+        assertEquals(1, flat.jump(7));
+        assertEquals(5, flat.jump(3));
+        assertEquals(3, flat.jump(5));
+        assertEquals(-1, flat.jump(0));
+        //comments and carriage returns take no column
+        assertEquals(0, flat.line(2));
+        assertEquals(3, flat.column(2));
+        assertEquals(1, flat.line(7));
+        assertEquals(5, flat.column(7));
+        assertEquals(2, flat.line(8));
+        assertEquals(0, flat.column(8));
+
+        List<Node> nodes = flat.toNodes();
+        assertEquals(3, nodes.size());
+        WhileNode loop = (WhileNode) nodes.get(1);
+        assertEquals(3, loop.getNodes().size());
+        assertEquals(1, ((WhileNode) loop.getNodes().get(1)).getNodes().size());
+        assertEquals(Kind.OUTPUT, nodes.get(2).kind());
+    }
+
+    @Test
+    public void folding() throws BrainfuckCompilationException {
+        FlatProgram flat = BrainfuckCompiler.flatten("+++--[>><<<]+-.");
+        FlatProgram mixed = flat.fold(true);
+        //runs which cancel out are dropped
+        assertKinds(mixed, Kind.ADD, Kind.WHILE_START, Kind.MOVE, Kind.WHILE_END, Kind.OUTPUT);
+        assertEquals(1, mixed.operand(0));
+        assertEquals(-1, mixed.operand(2));
+        assertEquals(3, mixed.jump(1));
+        FlatProgram separate = flat.fold(false);
+        assertKinds(separate, Kind.ADD, Kind.ADD, Kind.WHILE_START, Kind.MOVE, Kind.WHILE_END, Kind.INCREMENT, Kind.DECREMENT, Kind.OUTPUT);
+        assertEquals(3, separate.operand(0));
+        assertEquals(-2, separate.operand(1));
+        assertEquals(3, separate.column(1));
+    }
+
+    @Test
+    public void builder() {
+        FlatProgram.Builder builder = new FlatProgram.Builder(1);
+        for (int i = 0; i < 100; i++) {
+            builder.add(Kind.WHILE_START, 0, i, 0);
+        }
+        for (int i = 0; i < 100; i++) {
+            builder.add(Kind.WHILE_END, 0, 100 + i, 0);
+        }
+        FlatProgram flat = builder.build();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(199 - i, flat.jump(i));
+        }
+
+        try {
+            new FlatProgram.Builder().add(Kind.SET_ZERO, 0, 0, 0);
+            fail("Expected a synthetic kind to be rejected");
+        } catch (IllegalArgumentException ignored) {
+
+        }
+        try {
+            new FlatProgram.Builder().add(Kind.WHILE_END, 0, 0, 0);
+            fail("Expected an unmatched end to be rejected");
+        } catch (IllegalStateException ignored) {
+
+        }
+        try {
+            new FlatProgram.Builder().add(Kind.WHILE_START, 0, 0, 0).build();
+            fail("Expected an unmatched start to be rejected");
+        } catch (IllegalStateException ignored) {
+
+        }
+    }
+
+    private static void assertKinds(FlatProgram program, Kind... kinds) {
+        assertEquals(kinds.length, program.size());
+        for (int i = 0; i < kinds.length; i++) {
+            assertEquals(kinds[i], program.kind(i));
+        }
+    }
+
+    private static ModelJavaBytecodeCompiler compiler(String name) {
+        return new ModelJavaBytecodeCompiler(Programs.tape(name, new ByteCell(), false), name, false, true);
+    }
+
+}
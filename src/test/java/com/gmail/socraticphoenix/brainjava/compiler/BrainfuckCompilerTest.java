@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler;
+
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.ast.FlatProgram;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BrainfuckCompilerTest {
+    private static final String COMMANDS = "+-<>[].,";
+
+    @Test
+    public void classifier() {
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            Kind kind = Kind.from(c);
+            if (COMMANDS.indexOf(c) >= 0) {
+                assertEquals(c, kind.getRep());
+            } else {
+                assertNull(kind);
+            }
+        }
+    }
+
+    @Test
+    public void commentsAreIgnored() throws BrainfuckCompilationException {
+        //the low bytes of U+012B and U+015B are + and [
+        String comment = "a 1\t\u00e9\u012b\u015b\ud83d\ude00\r\n";
+        for (String program : Programs.SAMPLES) {
+            StringBuilder commented = new StringBuilder(comment);
+            for (char c : program.toCharArray()) {
+                commented.append(c).append(comment);
+            }
+            assertArrayEquals(Programs.baseline(program, Programs.INPUT), Programs.baseline(commented.toString(), Programs.INPUT));
+        }
+    }
+
+    @Test
+    public void locations() throws BrainfuckCompilationException {
+        Random random = new Random(42);
+        String alphabet = COMMANDS + "\n\r x\u00e9";
+        StringBuilder source = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < 10000; i++) {
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            if (c == ']' && depth == 0) {
+                continue;
+            }
+            depth += c == '[' ? 1 : c == ']' ? -1 : 0;
+            source.append(c);
+        }
+        source.append(Programs.repeat("]", depth));
+
+        FlatProgram flat = BrainfuckCompiler.flatten(source.toString());
+        int index = 0;
+        int line = 0;
+        int column = 0;
+        for (char c : source.toString().toCharArray()) {
+            if (c == '\n') {
+                line++;
+                column = 0;
+            } else if (c != '\r') {
+                if (COMMANDS.indexOf(c) >= 0) {
+                    assertEquals(c, flat.kind(index).getRep());
+                    assertEquals(line, flat.line(index));
+                    assertEquals(column, flat.column(index));
+                    index++;
+                }
+                column++;
+            }
+        }
+        assertEquals(index, flat.size());
+    }
+
+    @Test
+    public void unbalancedBrackets() {
+        //pointed out as they were before programs were lexed in one pass
+        assertPointed("+]", "+]\n_^\n");
+        assertPointed("a[\n+[-]", "a[\n_^__\n+[-]\n");
+        assertPointed("[]]\r\n[[", "[]]\n__^\n[[\n^^_\n");
+    }
+
+    private static void assertPointed(String program, String pointed) {
+        try {
+            BrainfuckCompiler.flatten(program);
+            fail("Expected " + program + " to be unbalanced");
+        } catch (BrainfuckPointedCompilationException e) {
+            assertEquals("Unbalanced brackets", e.getError());
+            assertEquals(pointed, e.getPointedError());
+        } catch (BrainfuckCompilationException e) {
+            fail("Expected a pointed failure, got " + e);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler;
+
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class BrainfuckStreamCompilerTest {
+    private static int count = 0;
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException {
+        for (String program : Programs.samples(
+                //longer than a batch, with a loop spanning batches
+                Programs.repeat("+", 3000) + "[>" + Programs.repeat("+-", 2000) + "+<-]>.",
+                "+++\n[>+++ comment ++<-]\r\n>.\tdone")) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            //each of folding, the array tape and inline loops, with and without the others
+            for (int mode = 0; mode < 4; mode++) {
+                boolean fold = (mode & 1) != 0, array = (mode & 2) != 0, inline = mode == 1 || mode == 2;
+                assertArrayEquals(expected, stream(new StringReader(program), fold, array, inline));
+                assertArrayEquals(expected, stream(program.getBytes(StandardCharsets.UTF_8), fold, array, inline));
+            }
+        }
+    }
+
+    @Test
+    public void nonAsciiCommentsAreIgnored() throws BrainfuckCompilationException {
+        //multi-byte characters around the start of a batch, and a malformed byte
+        String program = Programs.repeat("\u00e9", 1023) + "++\u20ac\ud83d\ude00+[>++<-]>.";
+        byte[] expected = Programs.baseline(program, Programs.INPUT);
+        byte[] source = program.getBytes(StandardCharsets.UTF_8);
+        byte[] malformed = new byte[source.length + 1];
+        malformed[0] = (byte) 0xFF;
+        System.arraycopy(source, 0, malformed, 1, source.length);
+        for (boolean fold : new boolean[] {false, true}) {
+            assertArrayEquals(expected, stream(source, fold, false, false));
+            assertArrayEquals(expected, stream(malformed, fold, false, false));
+        }
+    }
+
+    @Test
+    public void unbalancedBrackets() {
+        for (String program : new String[] {"+[>+<-", "+]", "[[]", "[]]", "+\n[\n[-]"}) {
+            for (boolean fold : new boolean[] {false, true}) {
+                try {
+                    stream(new StringReader(program), fold, false, false);
+                    fail("Expected " + program + " to be unbalanced");
+                } catch (BrainfuckPointedCompilationException ignored) {
+
+                } catch (BrainfuckCompilationException e) {
+                    fail("Expected a pointed failure, got " + e);
+                }
+            }
+        }
+    }
+
+    private static byte[] stream(byte[] program, boolean fold, boolean array, boolean inline) throws BrainfuckCompilationException {
+        String name = "Streamed" + count++;
+        ModelJavaBytecodeCompiler compiler = compiler(name, array, inline);
+        BrainfuckCompiler.compile(Channels.newChannel(new ByteArrayInputStream(program)), compiler, fold, new CellRange(0, 255));
+        return run(name, compiler);
+    }
+
+    private static byte[] stream(StringReader program, boolean fold, boolean array, boolean inline) throws BrainfuckCompilationException {
+        String name = "Streamed" + count++;
+        ModelJavaBytecodeCompiler compiler = compiler(name, array, inline);
+        BrainfuckCompiler.compile(program, compiler, fold, new CellRange(0, 255));
+        return run(name, compiler);
+    }
+
+    private static ModelJavaBytecodeCompiler compiler(String name, boolean array, boolean inline) {
+        return new ModelJavaBytecodeCompiler(Programs.tape(name, new ByteCell(), array), name, inline, true);
+    }
+
+    private static byte[] run(String name, ModelJavaBytecodeCompiler compiler) {
+        return new CompiledProgram(name, compiler.dumpClasses(), true).run(Programs.INPUT);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MoveNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FoldingPassTest {
+
+    @Test
+    public void foldsRuns() throws BrainfuckCompilationException {
+        List<Node> nodes = new FoldingPass().apply(nodes("+++>>--<<<.+"));
+        assertEquals(6, nodes.size());
+        assertEquals(3, ((AddNode) nodes.get(0)).getDelta());
+        assertEquals(2, ((MoveNode) nodes.get(1)).getDelta());
+        assertEquals(-2, ((AddNode) nodes.get(2)).getDelta());
+        assertEquals(-3, ((MoveNode) nodes.get(3)).getDelta());
+        assertEquals(Kind.OUTPUT, nodes.get(4).kind());
+        assertEquals(Kind.INCREMENT, nodes.get(5).kind());
+    }
+
+    @Test
+    public void foldsLoopBodies() throws BrainfuckCompilationException {
+        List<Node> nodes = new FoldingPass().apply(nodes("[->>+++<<]"));
+        List<Node> body = ((WhileNode) nodes.get(0)).getNodes();
+        assertEquals(4, body.size());
+        assertEquals(Kind.DECREMENT, body.get(0).kind());
+        assertEquals(3, ((AddNode) body.get(2)).getDelta());
+    }
+
+    @Test
+    public void removesCancellingRuns() throws BrainfuckCompilationException {
+        assertTrue(new FoldingPass().apply(nodes("+-+-><<>")).isEmpty());
+    }
+
+    @Test
+    public void keepsDirectionsApartOutsideZero() throws BrainfuckCompilationException {
+        //with cells from 2 to 200, a step below the range wraps to the top, so ++-- does not cancel out
+        List<Node> nodes = new FoldingPass(new CellRange(2, 200)).apply(nodes("++--"));
+        assertEquals(2, nodes.size());
+        assertEquals(2, ((AddNode) nodes.get(0)).getDelta());
+        assertEquals(-2, ((AddNode) nodes.get(1)).getDelta());
+    }
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException {
+        for (String program : Programs.SAMPLES) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            for (int mode = 0; mode < 4; mode++) {
+                assertArrayEquals(expected, Programs.run(program, Programs.passes(new FoldingPass(new CellRange(0, 255))), (mode & 1) != 0, (mode & 2) != 0, Programs.INPUT));
+            }
+        }
+    }
+
+    private static List<Node> nodes(String program) throws BrainfuckCompilationException {
+        return BrainfuckCompiler.flatten(program).toNodes();
+    }
+
+}
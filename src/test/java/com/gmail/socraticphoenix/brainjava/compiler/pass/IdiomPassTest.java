@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.MulAddNode;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IdiomPassTest {
+
+    @Test
+    public void recognizesClearLoops() throws BrainfuckCompilationException {
+        assertEquals(Kind.SET_ZERO, loop("[-]").kind());
+        assertEquals(Kind.SET_ZERO, loop("[+]").kind());
+        assertEquals(Kind.SET_ZERO, loop("[->+-<]").kind());
+    }
+
+    @Test
+    public void recognizesMultiplyLoops() throws BrainfuckCompilationException {
+        MulAddNode node = (MulAddNode) loop("[->++>+++<<]");
+        assertArrayEquals(new int[] {1, 2}, node.getOffsets());
+        assertArrayEquals(new int[] {2, 3}, node.getFactors());
+
+        //counting up, the loop runs as many times as it takes the counter to wrap to zero
+        node = (MulAddNode) loop("[+<<--<+>>>]");
+        assertArrayEquals(new int[] {-3, -2}, node.getOffsets());
+        assertArrayEquals(new int[] {-1, 2}, node.getFactors());
+    }
+
+    @Test
+    public void leavesOtherLoops() throws BrainfuckCompilationException {
+        assertEquals(Kind.WHILE_START, loop("[->+<.]").kind());
+        assertEquals(Kind.WHILE_START, loop("[->+<<]").kind());
+        assertEquals(Kind.WHILE_START, loop("[-->+<]").kind());
+        assertEquals(Kind.WHILE_START, loop("[->[-]<]").kind());
+    }
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException {
+        String[] programs = Programs.samples(
+                "+++++[->+++++++++++++++++++++++++++++++++++++++++++++++++++++++++++<]>.",
+                "+++[+>-<]>.",
+                "+++>++<[->[->+>+<<]>>[-<<+>>]<<<]>>>."
+        );
+        for (String program : programs) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            for (int mode = 0; mode < 4; mode++) {
+                assertArrayEquals(expected, Programs.run(program, Programs.passes(new FoldingPass(new CellRange(0, 255)), new IdiomPass()), (mode & 1) != 0, (mode & 2) != 0, Programs.INPUT));
+            }
+        }
+    }
+
+    private static Node loop(String program) throws BrainfuckCompilationException {
+        return new IdiomPass().apply(new FoldingPass().apply(BrainfuckCompiler.flatten(program).toNodes())).get(0);
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.ast.AddNode;
+import com.gmail.socraticphoenix.brainjava.ast.BlockNode;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.WhileNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffsetPassTest {
+
+    @Test
+    public void addressesCellsByOffset() throws BrainfuckCompilationException {
+        BlockNode block = (BlockNode) nodes(">+>++<<-.").get(0);
+        assertArrayEquals(new int[] {1, 2, 0, 0}, block.getOffsets());
+        assertEquals(0, block.getShift());
+        assertEquals(0, block.getMin());
+        assertEquals(2, block.getMax());
+        assertEquals(2, ((AddNode) block.getNodes().get(1)).getDelta());
+        assertEquals(Kind.OUTPUT, block.getNodes().get(3).kind());
+    }
+
+    @Test
+    public void boundsCoverMultiplyTargets() throws BrainfuckCompilationException {
+        BlockNode block = (BlockNode) nodes("<[->>+<<]<").get(0);
+        assertArrayEquals(new int[] {-1}, block.getOffsets());
+        assertEquals(-2, block.getShift());
+        assertEquals(-2, block.getMin());
+        assertEquals(1, block.getMax());
+    }
+
+    @Test
+    public void blocksStopAtLoops() throws BrainfuckCompilationException {
+        List<Node> nodes = nodes(">+[>+<-.]>.");
+        assertEquals(3, nodes.size());
+        assertEquals(Kind.BLOCK, nodes.get(0).kind());
+        assertEquals(Kind.BLOCK, ((WhileNode) nodes.get(1)).getNodes().get(0).kind());
+        assertEquals(Kind.BLOCK, nodes.get(2).kind());
+    }
+
+    @Test
+    public void leavesRunsWithoutMoves() throws BrainfuckCompilationException {
+        List<Node> nodes = nodes("+++.,");
+        assertEquals(3, nodes.size());
+        assertEquals(Kind.ADD, nodes.get(0).kind());
+    }
+
+    @Test
+    public void splitsLongRuns() throws BrainfuckCompilationException {
+        List<Node> nodes = nodes(Programs.repeat(">+", 200));
+        int shift = 0;
+        for (Node node : nodes) {
+            assertTrue(((BlockNode) node).getNodes().size() <= OffsetPass.MAX_BLOCK);
+            shift += ((BlockNode) node).getShift();
+        }
+        assertTrue(nodes.size() > 1);
+        assertEquals(200, shift);
+    }
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException {
+        //blocks reaching past the initial capacity of the array tape, on either side, and reading input at offsets
+        String[] programs = Programs.samples(
+                Programs.repeat(">+>--", 1000) + "<<<.>.",
+                Programs.repeat("<-<++", 1000) + ">>>.<.",
+                ",>,>,<<.>>.<.",
+                "+++[>>+++[<+>-]<<-]>.>."
+        );
+        for (String program : programs) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            for (int mode = 0; mode < 4; mode++) {
+                assertArrayEquals(expected, Programs.run(program, BrainJava.passes(2, 0, 255, 0), (mode & 1) != 0, (mode & 2) != 0, Programs.INPUT));
+            }
+        }
+    }
+
+    private static List<Node> nodes(String program) throws BrainfuckCompilationException {
+        return BrainJava.passes(2, 0, 255, 0).apply(BrainfuckCompiler.flatten(program).toNodes());
+    }
+
+}
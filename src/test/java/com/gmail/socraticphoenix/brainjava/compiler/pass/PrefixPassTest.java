@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.InterpreterIO;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.InterpreterVisitor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class PrefixPassTest {
+    private static final CellRange RANGE = new CellRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    @Test
+    public void loneSurrogatesStayApart() throws BrainfuckCompilationException, IOException {
+        //a high and a low surrogate written one after the other are two outputs, not one pair
+        String program = repeat("+", 0xD83D) + ".>" + repeat("+", 0xDE00) + ".";
+        assertArrayEquals(run(program, 0), run(program, 3));
+        assertArrayEquals(new long[] {0xD83D, 0xDE00}, run(program, 3));
+    }
+
+    @Test
+    public void supplementaryOutputIsFolded() throws BrainfuckCompilationException, IOException {
+        String program = repeat("+", 0x1F600) + ".>" + repeat("+", 0x41) + ".";
+        assertArrayEquals(new long[] {0x1F600, 0x41}, run(program, 0));
+        assertArrayEquals(run(program, 0), run(program, 3));
+    }
+
+    private static long[] run(String program, int level) throws BrainfuckCompilationException, IOException {
+        long[] output = new long[16];
+        int[] count = {0};
+        InterpreterVisitor.lower(program, RANGE, BrainJava.passes(level, RANGE.getMin(), RANGE.getMax(), 1000000L)).run(new InterpreterIO() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public void write(int value) {
+                output[count[0]++] = value;
+            }
+
+            @Override
+            public void flush() {
+
+            }
+        });
+        return Arrays.copyOf(output, count[0]);
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.compiler.pass;
+
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.ast.Kind;
+import com.gmail.socraticphoenix.brainjava.ast.Node;
+import com.gmail.socraticphoenix.brainjava.ast.ScanNode;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ScanPassTest {
+
+    @Test
+    public void recognizesScans() throws BrainfuckCompilationException {
+        assertEquals(1, ((ScanNode) loop("[>]")).getStride());
+        assertEquals(-2, ((ScanNode) loop("[<<]")).getStride());
+        assertEquals(4, ((ScanNode) loop("[>>>>]")).getStride());
+        assertEquals(3, ((ScanNode) loop("[>><>>]")).getStride());
+    }
+
+    @Test
+    public void leavesOtherLoops() throws BrainfuckCompilationException {
+        assertEquals(Kind.WHILE_START, loop("[><]").kind());
+        assertEquals(Kind.WHILE_START, loop("[>+]").kind());
+        assertEquals(Kind.WHILE_START, loop("[>[<]]").kind());
+    }
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException {
+        //the long scans run past the initial capacity of the array tape, on either side
+        String[] programs = Programs.samples(
+                Programs.repeat("+>", 3000) + Programs.repeat("<", 3000) + "[>]+.",
+                Programs.repeat("-<", 1500) + Programs.repeat(">", 1500) + "[<]+.",
+                Programs.repeat("+>>>", 500) + Programs.repeat("<<<", 500) + "[>>>]+.<<<.",
+                Programs.repeat("+<<", 700) + Programs.repeat(">>", 700) + "[<<]+.>>."
+        );
+        for (String program : programs) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            for (int mode = 0; mode < 4; mode++) {
+                assertArrayEquals(expected, Programs.run(program, Programs.passes(new FoldingPass(new CellRange(0, 255)), new ScanPass()), (mode & 1) != 0, (mode & 2) != 0, Programs.INPUT));
+            }
+        }
+    }
+
+    private static Node loop(String program) throws BrainfuckCompilationException {
+        return new ScanPass().apply(new FoldingPass().apply(BrainfuckCompiler.flatten(program).toNodes())).get(0);
+    }
+
+}
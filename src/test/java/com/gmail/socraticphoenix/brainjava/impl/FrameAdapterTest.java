@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class FrameAdapterTest {
+    private static final long[][] RANGES = {{0, 255}, {-128, 127}, {Long.MIN_VALUE, Long.MAX_VALUE}};
+    private static int count = 0;
+
+    @Test
+    public void emittedFramesMatchBaseline() throws BrainfuckCompilationException {
+        for (long[] range : RANGES) {
+            for (String program : Programs.SAMPLES) {
+                byte[] expected = Programs.baseline(program, Models.boundedCell(range[0], range[1]), Programs.INPUT);
+                for (int level = 0; level <= 3; level += 3) {
+                    for (int mode = 0; mode < 8; mode++) {
+                        boolean array = (mode & 1) != 0, inline = (mode & 2) != 0, instance = (mode & 4) != 0;
+                        //classes are verified as they load, so a bad frame fails here
+                        assertArrayEquals(expected, run(program, range, level, array, inline, instance, false));
+                        assertArrayEquals(expected, run(program, range, level, array, inline, instance, true));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deepNesting() throws BrainfuckCompilationException {
+        String program = "+" + Programs.repeat("[>+", 200) + "[-]" + Programs.repeat("<-]", 200) + "+.";
+        byte[] expected = Programs.baseline(program, Programs.INPUT);
+        for (int mode = 0; mode < 8; mode++) {
+            assertArrayEquals(expected, run(program, new long[] {0, 255}, 2, (mode & 1) != 0, (mode & 2) != 0, (mode & 4) != 0, false));
+        }
+    }
+
+    private static byte[] run(String program, long[] range, int level, boolean array, boolean inline, boolean instance, boolean computeFrames) throws BrainfuckCompilationException {
+        String name = "Frames" + count++;
+        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(Programs.tape(name, Models.boundedCell(range[0], range[1]), array), name, inline, instance, computeFrames);
+        BrainfuckCompiler.compile(program, compiler, BrainJava.passes(level, range[0], range[1], 1000000L));
+        return new CompiledProgram(name, compiler.dumpClasses(), instance).run(Programs.INPUT);
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.TapeModel;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModelJavaBytecodeCompilerTest {
+    private static int count = 0;
+
+    @Test
+    public void widePrefixOnListTape() throws BrainfuckCompilationException {
+        String program = repeat("+>", 1000) + ",.";
+        byte[] input = "x".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(input, run(program, 3, false, input));
+        assertArrayEquals(input, run(program, 3, true, input));
+    }
+
+    @Test
+    public void sparsePrefixOnListTape() throws BrainfuckCompilationException {
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            program.append(repeat("+", i % 7 + 1)).append(repeat(">", i % 50 + 1));
+        }
+        program.append(repeat("<", 100000)).append("+++,.");
+        byte[] input = "x".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(input, run(program.toString(), 3, false, input));
+        assertArrayEquals(input, run(program.toString(), 3, true, input));
+    }
+
+    @Test
+    public void prefixBailsOutMidLoop() throws BrainfuckCompilationException {
+        //the loop changes cells before it reaches the input, which must all be undone
+        String program = "+++++[>++++++++++<-]>[>+>++<<-,.]>.>.";
+        byte[] input = "abc".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(run(program, 0, false, input), run(program, 3, false, input));
+        assertArrayEquals(run(program, 0, true, input), run(program, 3, true, input));
+    }
+
+    @Test
+    public void largeProgramSpillsIntoClasses() throws BrainfuckCompilationException {
+        //unoptimized, each of the 2MB of instructions is compiled on its own, into far more code than one class can hold
+        String program = repeat("+>", 1000000) + ",.";
+        byte[] input = "x".getBytes(StandardCharsets.US_ASCII);
+        CompiledProgram compiled = compile(program, 0, true, true, false);
+        assertTrue(compiled.getClasses().size() > 1);
+        assertArrayEquals(input, compiled.run(input));
+    }
+
+    @Test
+    public void largeStreamedProgramSpillsIntoClasses() throws BrainfuckCompilationException {
+        String program = repeat("+>", 1000000) + ",.";
+        byte[] input = "x".getBytes(StandardCharsets.US_ASCII);
+        CompiledProgram compiled = compile(program, 0, true, true, true);
+        assertTrue(compiled.getClasses().size() > 1);
+        assertArrayEquals(input, compiled.run(input));
+    }
+
+    @Test
+    public void manyLoopMethodsSpillIntoClasses() throws BrainfuckCompilationException {
+        String program = repeat("+[-]>", 20000) + "+++,.";
+        byte[] input = "x".getBytes(StandardCharsets.US_ASCII);
+        CompiledProgram compiled = compile(program, 0, false, false, false);
+        assertTrue(compiled.getClasses().size() > 1);
+        assertArrayEquals(input, compiled.run(input));
+    }
+
+    private static byte[] run(String program, int level, boolean array, byte[] input) throws BrainfuckCompilationException {
+        return compile(program, level, array, true, false).run(input);
+    }
+
+    private static CompiledProgram compile(String program, int level, boolean array, boolean inline, boolean stream) throws BrainfuckCompilationException {
+        String name = "Test" + count++;
+        TapeModel model = array ? Models.arrayTape(name, new ByteCell(), Models.binaryIO(0)) : Models.unboundedTape(name, new ByteCell(), Models.binaryIO(0));
+        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(model, name, inline, true);
+        if (stream) {
+            BrainfuckCompiler.compile(new StringReader(program), compiler, level >= 1, new CellRange(0, 255));
+        } else {
+            BrainfuckCompiler.compile(program, compiler, BrainJava.passes(level, 0, 255, 1000000L));
+        }
+        return new CompiledProgram(name, compiler.dumpClasses(), true);
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.fancy.model;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.CompiledProgram;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.ModelJavaBytecodeCompiler;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.models.ByteCell;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Compiles programs with models written against the original model interfaces, with boxed cells, members defined in a
+ * {@link ClassWriter} and no {@link TapeModel#set(GeneratorAdapter, Consumer)}.
+ */
+public class LegacyModelTest {
+    private static final String[] PROGRAMS = {
+            "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.>++.",
+            "++++++[>++++++++<-]>[>+>++<<-]>.>.<<++++[>>>+<<<-]>>>[<<+>>-]<<.",
+            "++++[>++++[>++++<-]<-]>>+.[-]++++++++[>++++++<-]>.[->+>+<<]>>.<.",
+            "+>+>+>+>+>>>+[<]>.>.<<<<<[-]>[>]<.",
+            ",>,>+++<<[>[->+>+<<]>[-<+>]<<-]>>>.<<<,[-]>."
+    };
+    private static int count = 0;
+
+    @Test
+    public void legacyCellAndIO() throws BrainfuckCompilationException {
+        byte[] input = "\u0003\u0005x".getBytes(StandardCharsets.US_ASCII);
+        for (String program : PROGRAMS) {
+            byte[] expected = run(program, 0, false, false, input);
+            assertArrayEquals(expected, run(program, 0, true, false, input));
+            assertArrayEquals(expected, run(program, 3, true, false, input));
+        }
+    }
+
+    @Test
+    public void legacyTape() throws BrainfuckCompilationException {
+        byte[] input = "\u0003\u0005x".getBytes(StandardCharsets.US_ASCII);
+        for (String program : PROGRAMS) {
+            byte[] expected = run(program, 0, false, false, input);
+            assertArrayEquals(expected, run(program, 0, false, true, input));
+            assertArrayEquals(expected, run(program, 3, false, true, input));
+        }
+    }
+
+    private static byte[] run(String program, int level, boolean legacyCell, boolean legacyTape, byte[] input) throws BrainfuckCompilationException {
+        String name = "Legacy" + count++;
+        TapeModel model = legacyCell ? Models.unboundedTape(name, new LegacyIntCell(), new LegacyIO(Models.binaryIO(0))) : Models.unboundedTape(name, new ByteCell(), Models.binaryIO(0));
+        if (legacyTape) {
+            model = new LegacyTape(model);
+        }
+        ModelJavaBytecodeCompiler compiler = new ModelJavaBytecodeCompiler(model, name, false, true);
+        BrainfuckCompiler.compile(program, compiler, BrainJava.passes(level, 0, 255, 1000000L));
+        return new CompiledProgram(name, compiler.dumpClasses(), true).run(input);
+    }
+
+    /**
+     * A signed, 32-bit, wrapping cell, boxed as an {@link Integer}.
+     */
+    private static class LegacyIntCell implements CellModel {
+
+        @Override
+        public String type() {
+            return "java/lang/Integer";
+        }
+
+        @Override
+        public void initial(ClassWriter writer, MethodVisitor clinit) {
+
+        }
+
+        @Override
+        public void increment(GeneratorAdapter gen) {
+            gen.unbox(Type.INT_TYPE);
+            gen.push(1);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.box(Type.INT_TYPE);
+        }
+
+        @Override
+        public void decrement(GeneratorAdapter gen) {
+            gen.unbox(Type.INT_TYPE);
+            gen.push(-1);
+            gen.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+            gen.box(Type.INT_TYPE);
+        }
+
+        @Override
+        public void toCodepoint(GeneratorAdapter gen) {
+            gen.unbox(Type.INT_TYPE);
+        }
+
+        @Override
+        public void fromCodepoint(GeneratorAdapter gen) {
+            gen.box(Type.INT_TYPE);
+        }
+
+        @Override
+        public void defualtValue(GeneratorAdapter gen) {
+            gen.push(0);
+            gen.box(Type.INT_TYPE);
+        }
+
+        @Override
+        public void isZero(GeneratorAdapter gen, Label ifZero) {
+            gen.unbox(Type.INT_TYPE);
+            gen.visitJumpInsn(Opcodes.IFEQ, ifZero);
+        }
+
+    }
+
+    /**
+     * Defines the members of another model in a {@link ClassWriter}.
+     */
+    private static class LegacyIO implements IOModel {
+        private IOModel io;
+
+        public LegacyIO(IOModel io) {
+            this.io = io;
+        }
+
+        @Override
+        public void initial(String cls, ClassWriter writer, MethodVisitor clinit) {
+            this.io.initial(cls, (ClassVisitor) writer, clinit);
+        }
+
+        @Override
+        public void initialMethod(GeneratorAdapter main) {
+            this.io.initialMethod(main);
+        }
+
+        @Override
+        public void input(GeneratorAdapter gen) {
+            this.io.input(gen);
+        }
+
+        @Override
+        public void output(GeneratorAdapter gen, Consumer<GeneratorAdapter> getVal) {
+            this.io.output(gen, getVal);
+        }
+
+        @Override
+        public void end(GeneratorAdapter main) {
+            this.io.end(main);
+        }
+
+    }
+
+    /**
+     * Implements only the original operations of another tape, defining its members in a {@link ClassWriter}.
+     */
+    private static class LegacyTape implements TapeModel {
+        private TapeModel tape;
+
+        public LegacyTape(TapeModel tape) {
+            this.tape = tape;
+        }
+
+        @Override
+        public CellModel cell() {
+            return this.tape.cell();
+        }
+
+        @Override
+        public IOModel input() {
+            return this.tape.input();
+        }
+
+        @Override
+        public void initial(ClassWriter writer) {
+            this.tape.initial((ClassVisitor) writer);
+        }
+
+        @Override
+        public void initialMethod(GeneratorAdapter gen) {
+            this.tape.initialMethod(gen);
+        }
+
+        @Override
+        public void advance(GeneratorAdapter gen) {
+            this.tape.advance(gen);
+        }
+
+        @Override
+        public void retreat(GeneratorAdapter gen) {
+            this.tape.retreat(gen);
+        }
+
+        @Override
+        public void increment(GeneratorAdapter gen) {
+            this.tape.increment(gen);
+        }
+
+        @Override
+        public void decrement(GeneratorAdapter gen) {
+            this.tape.decrement(gen);
+        }
+
+        @Override
+        public void input(GeneratorAdapter gen) {
+            this.tape.input(gen);
+        }
+
+        @Override
+        public void output(GeneratorAdapter gen) {
+            this.tape.output(gen);
+        }
+
+        @Override
+        public void get(GeneratorAdapter gen) {
+            this.tape.get(gen);
+        }
+
+        @Override
+        public void end(GeneratorAdapter main) {
+            this.tape.end(main);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 socraticphoenix@gmail.com
+ * Copyright (c) 2017 contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gmail.socraticphoenix.brainjava.impl.handles;
+
+import com.gmail.socraticphoenix.brainjava.BrainJava;
+import com.gmail.socraticphoenix.brainjava.Programs;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompilationException;
+import com.gmail.socraticphoenix.brainjava.compiler.BrainfuckCompiler;
+import com.gmail.socraticphoenix.brainjava.compiler.CellRange;
+import com.gmail.socraticphoenix.brainjava.impl.fancy.model.Models;
+import com.gmail.socraticphoenix.brainjava.impl.interpreter.ByteIO;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MethodHandleCompilerTest {
+    private static final long[][] RANGES = {{0, 255}, {-128, 127}, {Integer.MIN_VALUE, Integer.MAX_VALUE}, {Long.MIN_VALUE, Long.MAX_VALUE}};
+
+    @Test
+    public void samplesMatchBaseline() throws BrainfuckCompilationException, IOException {
+        for (long[] range : RANGES) {
+            for (String program : Programs.SAMPLES) {
+                byte[] expected = Programs.baseline(program, Models.boundedCell(range[0], range[1]), Programs.INPUT);
+                for (int level = 0; level <= 3; level++) {
+                    assertArrayEquals(expected, run(MethodHandleCompiler.compile(program, new CellRange(range[0], range[1]), BrainJava.passes(level, range[0], range[1], 1000000L))));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void whileLoopsMatchBaseline() throws BrainfuckCompilationException, IOException {
+        for (String program : Programs.SAMPLES) {
+            byte[] expected = Programs.baseline(program, Programs.INPUT);
+            for (int level = 0; level <= 3; level++) {
+                MethodHandleCompiler compiler = new MethodHandleCompiler(new CellRange(0, 255), true);
+                BrainfuckCompiler.compile(program, compiler, BrainJava.passes(level, 0, 255, 1000000L));
+                assertArrayEquals(expected, run(compiler.getProgram()));
+            }
+        }
+    }
+
+    @Test
+    public void deepNesting() throws BrainfuckCompilationException, IOException {
+        String program = "+" + Programs.repeat("[>+", 200) + "[-]" + Programs.repeat("<-]", 200) + "+.";
+        byte[] expected = Programs.baseline(program, Programs.INPUT);
+        for (int level = 0; level <= 3; level++) {
+            assertArrayEquals(expected, run(MethodHandleCompiler.compile(program, new CellRange(0, 255), BrainJava.passes(level, 0, 255, 1000000L))));
+        }
+    }
+
+    private static byte[] run(MethodHandleProgram program) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        program.run(new ByteIO(new ByteArrayInputStream(Programs.INPUT), 0, out));
+        return out.toByteArray();
+    }
+
+}